@@ -0,0 +1,129 @@
+package gitlike.command;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Regression check of branch checkout where a file replaces a folder of tracked files and the other way round.
+ * <p>
+ * Each scenario runs the commands in a new temporary repository, in separate processes with the class path
+ * of this check, and fails if a file is lost or status is not clean after the checkout.
+ * usage: CheckoutReplaceCheck
+ */
+public class CheckoutReplaceCheck {
+    private static final String CLEAN_STATUS = "=== Staged Files ===\n\n=== Removed Files ===\n\n"
+            + "=== Modifications Not Staged For Commit ===\n\n=== Untracked Files ===\n\n";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        checkFileReplacesFolder(false);
+        checkFileReplacesFolder(true);
+        checkFolderReplacesFile();
+        System.out.println("verified checkout between a file and a folder of tracked files");
+    }
+
+    /**
+     * Branch fileb has the file a, branch dirb has the file a/b, checkout goes from dirb to fileb
+     * @param isFolderDeleted whether the folder a is deleted from the working folder before the checkout
+     */
+    private static void checkFileReplacesFolder(boolean isFolderDeleted) throws IOException, InterruptedException {
+        File folder = createBranches();
+        run(folder, "checkout", "dirb");
+        if (isFolderDeleted)
+            delete(new File(folder, "a"));
+
+        expectOutput(run(folder, "checkout", "fileb"), "");
+        expectContent(new File(folder, "a"), "file\n");
+        expectCleanStatus(folder);
+    }
+
+    /**
+     * Checkout goes from fileb, where a is a file, to dirb, where a is a folder
+     */
+    private static void checkFolderReplacesFile() throws IOException, InterruptedException {
+        File folder = createBranches();
+        expectOutput(run(folder, "checkout", "dirb"), "");
+        expectContent(new File(folder, "a/b"), "nested\n");
+        expectCleanStatus(folder);
+
+        expectOutput(run(folder, "checkout", "fileb"), "");
+        expectContent(new File(folder, "a"), "file\n");
+        expectCleanStatus(folder);
+    }
+
+    /**
+     * Create a repository with branch fileb that has the file a and branch dirb that has the file a/b,
+     * fileb is checked out
+     */
+    private static File createBranches() throws IOException, InterruptedException {
+        File folder = Files.createTempDirectory("gitlike-checkout").toFile();
+        run(folder, "init");
+        write(new File(folder, "base"), "base\n");
+        run(folder, "add", "base");
+        run(folder, "commit", "base");
+        run(folder, "branch", "fileb");
+        run(folder, "branch", "dirb");
+
+        run(folder, "checkout", "dirb");
+        write(new File(folder, "a/b"), "nested\n");
+        run(folder, "add", "a/b");
+        run(folder, "commit", "nested");
+
+        run(folder, "checkout", "fileb");
+        write(new File(folder, "a"), "file\n");
+        run(folder, "add", "a");
+        run(folder, "commit", "file");
+        return folder;
+    }
+
+    private static String run(File folder, String... args) throws IOException, InterruptedException {
+        /* the commands run in another folder, so relative class path entries are resolved first */
+        List<String> classPath = new ArrayList<>();
+        for (String entry: System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        List<String> command = new ArrayList<>(Arrays.asList("java", "-cp",
+                String.join(File.pathSeparator, classPath), "gitlike.Main"));
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(folder).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0)
+            throw new AssertionError("Command " + Arrays.toString(args) + " failed: " + output);
+        return output;
+    }
+
+    private static void expectOutput(String output, String expected) {
+        if (!output.equals(expected))
+            throw new AssertionError("Unexpected output: " + output);
+    }
+
+    private static void expectContent(File file, String expected) throws IOException {
+        if (!file.isFile() || !Files.readString(file.toPath()).equals(expected))
+            throw new AssertionError("File " + file + " does not have the content of the checked out commit");
+    }
+
+    private static void expectCleanStatus(File folder) throws IOException, InterruptedException {
+        String status = run(folder, "status").replace(System.lineSeparator(), "\n");
+        if (!status.endsWith(CLEAN_STATUS))
+            throw new AssertionError("Status is not clean after checkout: " + status);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child: files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,200 @@
+package gitlike.manager;
+
+import gitlike.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Benchmark of merge base computation on synthetic merge-heavy histories.
+ * <p>
+ * Branches commit in random order and often merge each other, sometimes in both directions at once,
+ * which creates criss-cross merges with several merge bases.
+ * The results are first checked against a brute-force computation on a small history.
+ * usage: MergeBaseBenchmark [number of commits] [number of branches] [number of queries]
+ */
+public class MergeBaseBenchmark {
+    private static final double MERGE_PROBABILITY = 0.3;
+    private static final double CRISS_CROSS_PROBABILITY = 0.05;
+    private static final long SEED = 42;
+
+    /**
+     * The old split point search visits ancestors again for every path to them, so it is stopped early
+     */
+    private static final long MAX_BFS_VISITS = 10_000_000;
+
+    public static void main(String[] args) throws IOException {
+        int commitCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int branchCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int queryCount = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        Random random = new Random(SEED);
+        verify(generate(3000, branchCount, random), 300, random);
+
+        CommitGraph graph = generate(commitCount, branchCount, random);
+        int[][] queries = new int[queryCount][];
+        for (int i = 0; i < queryCount; i++) {
+            queries[i] = new int[] {randomRecent(graph, random), randomRecent(graph, random)};
+        }
+
+        long start = System.nanoTime();
+        int multipleBases = 0;
+        for (int[] query: queries) {
+            if (MergeBase.findAll(graph, query[0], query[1]).size() > 1)
+                multipleBases++;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("merge base: %d commits, %d queries, %.3f ms per query, %d with several bases%n",
+                graph.size(), queryCount, elapsed / 1e6 / queryCount, multipleBases);
+
+        int bfsQueries = Math.min(queryCount, 10);
+        int gaveUp = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < bfsQueries; i++) {
+            if (oldSplitPoint(graph, queries[i][0], queries[i][1]) == null)
+                gaveUp++;
+        }
+        elapsed = System.nanoTime() - start;
+        System.out.printf("old split point search: %d queries, %.3f ms per query, %d stopped after %d visits%n",
+                bfsQueries, elapsed / 1e6 / bfsQueries, gaveUp, MAX_BFS_VISITS);
+    }
+
+    /**
+     * Build a graph where every commit continues a random branch and sometimes merges another branch
+     */
+    private static CommitGraph generate(int commitCount, int branchCount, Random random) throws IOException {
+        File folder = Files.createTempDirectory("gitlike-graph").toFile();
+        folder.deleteOnExit();
+        CommitGraph graph = new CommitGraph(folder);
+
+        int[] tips = new int[branchCount];
+        tips[0] = graph.add(Utils.sha1("commit", "0"), CommitGraph.NONE, CommitGraph.NONE, 0);
+        for (int i = 1; i < branchCount; i++) {
+            tips[i] = tips[0];
+        }
+
+        while (graph.size() < commitCount) {
+            int branch = random.nextInt(branchCount);
+            int other = random.nextInt(branchCount);
+            double choice = random.nextDouble();
+            if (other != branch && choice < CRISS_CROSS_PROBABILITY) {
+                int branchTip = tips[branch];
+                int otherTip = tips[other];
+                tips[branch] = add(graph, branchTip, otherTip);
+                tips[other] = add(graph, otherTip, branchTip);
+            } else if (other != branch && choice < MERGE_PROBABILITY) {
+                tips[branch] = add(graph, tips[branch], tips[other]);
+            } else {
+                tips[branch] = add(graph, tips[branch], CommitGraph.NONE);
+            }
+        }
+        return graph;
+    }
+
+    private static int add(CommitGraph graph, int parent, int mergedParent) {
+        int position = graph.size();
+        return graph.add(Utils.sha1("commit", Integer.toString(position)), parent, mergedParent, position);
+    }
+
+    private static int randomRecent(CommitGraph graph, Random random) {
+        int recent = Math.max(1, graph.size() / 10);
+        return graph.size() - 1 - random.nextInt(recent);
+    }
+
+    /**
+     * Compare merge bases with common ancestors that are not ancestors of other common ancestors
+     */
+    private static void verify(CommitGraph graph, int queryCount, Random random) {
+        BitSet[] ancestors = new BitSet[graph.size()];
+        for (int position = 0; position < graph.size(); position++) {
+            ancestors[position] = ancestors(graph, position);
+        }
+
+        for (int i = 0; i < queryCount; i++) {
+            int first = random.nextInt(graph.size());
+            int second = random.nextInt(graph.size());
+            BitSet common = (BitSet) ancestors[first].clone();
+            common.and(ancestors[second]);
+
+            BitSet worse = new BitSet(graph.size());
+            for (int base = common.nextSetBit(0); base >= 0; base = common.nextSetBit(base + 1)) {
+                BitSet strictAncestors = (BitSet) ancestors[base].clone();
+                strictAncestors.clear(base);
+                worse.or(strictAncestors);
+            }
+            common.andNot(worse);
+            Set<Integer> expected = new HashSet<>();
+            common.stream().forEach(expected::add);
+
+            List<Integer> actual = MergeBase.findAll(graph, first, second);
+            if (!expected.equals(new HashSet<>(actual)) || actual.size() != expected.size())
+                throw new AssertionError("Wrong merge bases of " + first + " and " + second + ": " + actual
+                        + " instead of " + expected);
+        }
+        System.out.printf("verified %d queries on %d commits%n", queryCount, graph.size());
+    }
+
+    private static BitSet ancestors(CommitGraph graph, int position) {
+        BitSet result = new BitSet(graph.size());
+        Queue<Integer> toVisit = new ArrayDeque<>();
+        toVisit.add(position);
+        result.set(position);
+        while (!toVisit.isEmpty()) {
+            int current = toVisit.poll();
+            for (int parent: new int[] {graph.getParent(current), graph.getMergedParent(current)}) {
+                if (parent != CommitGraph.NONE && !result.get(parent)) {
+                    result.set(parent);
+                    toVisit.add(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The split point search that was used before, without a visited set, returns null when stopped
+     */
+    private static Integer oldSplitPoint(CommitGraph graph, int head, int branch) {
+        long visits = 0;
+        Set<Integer> branchHistory = new HashSet<>();
+        Queue<Integer> toVisit = new ArrayDeque<>();
+        toVisit.add(branch);
+        while (!toVisit.isEmpty()) {
+            if (++visits > MAX_BFS_VISITS)
+                return null;
+            int position = toVisit.poll();
+            branchHistory.add(position);
+            addParents(graph, position, toVisit);
+        }
+
+        toVisit.add(head);
+        while (!toVisit.isEmpty()) {
+            if (++visits > MAX_BFS_VISITS)
+                return null;
+            int position = toVisit.poll();
+            if (branchHistory.contains(position))
+                return position;
+            addParents(graph, position, toVisit);
+        }
+        return CommitGraph.NONE;
+    }
+
+    private static void addParents(CommitGraph graph, int position, Queue<Integer> toVisit) {
+        List<Integer> parents = new ArrayList<>(2);
+        parents.add(graph.getParent(position));
+        parents.add(graph.getMergedParent(position));
+        for (int parent: parents) {
+            if (parent != CommitGraph.NONE)
+                toVisit.add(parent);
+        }
+    }
+}
@@ -18,11 +18,14 @@ public class Main {
         commandMap.put("branch", new BranchCommand());
         commandMap.put("checkout", new CheckoutCommand());
         commandMap.put("commit", new CommitCommand());
+        commandMap.put("config", new ConfigCommand());
         commandMap.put("find", new FindCommand());
         commandMap.put("global-log", new GlobalLogCommand());
         commandMap.put("init", new InitCommand());
         commandMap.put("log", new LogCommand());
         commandMap.put("merge", new MergeCommand());
+        commandMap.put("monitor", new MonitorCommand());
+        commandMap.put("repack", new RepackCommand());
         commandMap.put("reset", new ResetCommand());
         commandMap.put("rm", new RmCommand());
         commandMap.put("rm-branch", new RmBranchCommand());
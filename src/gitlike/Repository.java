@@ -3,7 +3,12 @@ package gitlike;
 import gitlike.manager.BlobManager;
 import gitlike.manager.BranchManager;
 import gitlike.manager.CommitManager;
+import gitlike.manager.ConfigManager;
+import gitlike.manager.FileMonitor;
+import gitlike.manager.ObjectCache;
 import gitlike.manager.StageManager;
+import gitlike.manager.TreeManager;
+import gitlike.manager.WorkingTree;
 import gitlike.object.Branch;
 import gitlike.object.Commit;
 
@@ -16,13 +21,22 @@ public class Repository implements Initializable {
     private static final String REPOSITORY_FOLDER_NAME = ".gitlike";
     private static final String CURRENT_BRANCH_FILE_NAME = "currentBranch";
 
+    /**
+     * Environment variable that makes commands print the counters of the object caches when they end
+     */
+    private static final String CACHE_STATS_VARIABLE = "GITLIKE_CACHE_STATS";
+
     private final File currentBranchFile;
     private final File repositoryFolder;
 
+    private final ConfigManager configManager;
     private final CommitManager commitManager;
     private final BlobManager blobManager;
+    private final TreeManager treeManager;
     private final BranchManager branchManager;
     private final StageManager stageManager;
+    private final WorkingTree workingTree;
+    private final FileMonitor fileMonitor;
 
     /**
      * Create a repository in the starting folder
@@ -31,10 +45,24 @@ public class Repository implements Initializable {
         repositoryFolder = new File(REPOSITORY_FOLDER_NAME);
         currentBranchFile = new File(repositoryFolder, CURRENT_BRANCH_FILE_NAME);
 
-        commitManager = new CommitManager(repositoryFolder);
-        blobManager = new BlobManager(repositoryFolder);
-        branchManager = new BranchManager(repositoryFolder);
-        stageManager = new StageManager(repositoryFolder);
+        configManager = new ConfigManager(repositoryFolder);
+        blobManager = new BlobManager(repositoryFolder, configManager);
+        treeManager = new TreeManager(repositoryFolder, configManager);
+        commitManager = new CommitManager(repositoryFolder, configManager, blobManager, treeManager);
+        branchManager = new BranchManager(repositoryFolder, commitManager);
+        stageManager = new StageManager(repositoryFolder, blobManager);
+        workingTree = new WorkingTree(new File("."), repositoryFolder);
+        fileMonitor = new FileMonitor(repositoryFolder, new File("."));
+
+        if (System.getenv(CACHE_STATS_VARIABLE) != null)
+            Runtime.getRuntime().addShutdownHook(new Thread(this::printCacheStats));
+    }
+
+    /**
+     * Get the config manager
+     */
+    public ConfigManager getConfigManager() {
+        return configManager;
     }
 
     /**
@@ -65,6 +93,27 @@ public class Repository implements Initializable {
         return blobManager;
     }
 
+    /**
+     * Get the tree manager
+     */
+    public TreeManager getTreeManager() {
+        return treeManager;
+    }
+
+    /**
+     * Get the working tree
+     */
+    public WorkingTree getWorkingTree() {
+        return workingTree;
+    }
+
+    /**
+     * Get the file monitor, which tells the working files that changed while it runs
+     */
+    public FileMonitor getFileMonitor() {
+        return fileMonitor;
+    }
+
     /**
      * Get the current commit
      */
@@ -91,16 +140,34 @@ public class Repository implements Initializable {
     public void initialize() {
         if (!repositoryFolder.mkdir())
             throw new GitLikeException("Unable to create repository folder");
+        configManager.initialize();
         commitManager.initialize();
         blobManager.initialize();
         branchManager.initialize();
         stageManager.initialize();
     }
 
+    /**
+     * The config manager is not checked, repositories created by older versions have no config file
+     */
     public boolean isInitialized() {
         return commitManager.isInitialized()
                 && blobManager.isInitialized()
                 && branchManager.isInitialized()
                 && stageManager.isInitialized();
     }
+
+    /**
+     * Print hits, misses, evictions and the estimated size of each object cache to the error output
+     */
+    private void printCacheStats() {
+        printCacheStats("commit", commitManager.getCache());
+        printCacheStats("tree", treeManager.getCache());
+        printCacheStats("blob", blobManager.getCache());
+    }
+
+    private static void printCacheStats(String name, ObjectCache<?> cache) {
+        System.err.printf("%s cache: %d hits, %d misses, %d evictions, %d bytes%n", name, cache.getHitCount(),
+                cache.getMissCount(), cache.getEvictionCount(), cache.getWeight());
+    }
 }
@@ -1,13 +1,16 @@
 package gitlike;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.charset.StandardCharsets;
@@ -27,8 +30,12 @@ public class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     public static final int UID_LENGTH = 40;
 
+    /** Size of the buffer used to stream file contents. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
-     *  be any mixture of byte arrays and Strings. */
+     *  be any mixture of byte arrays, Strings and InputStreams.  Streams
+     *  are read to the end through a fixed-size buffer. */
     public static String sha1(Object... vals) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
@@ -37,6 +44,12 @@ public class Utils {
                     md.update((byte[]) val);
                 } else if (val instanceof String) {
                     md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                } else if (val instanceof InputStream) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int count;
+                    while ((count = ((InputStream) val).read(buffer)) > 0) {
+                        md.update(buffer, 0, count);
+                    }
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -48,7 +61,30 @@ public class Utils {
             return result.toString();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the 20 bytes of the hexadecimal SHA-1 UID ID. */
+    public static byte[] hexToBytes(String id) {
+        byte[] result = new byte[id.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            int high = Character.digit(id.charAt(i * 2), 16);
+            int low = Character.digit(id.charAt(i * 2 + 1), 16);
+            result[i] = (byte) (high << 4 | low);
         }
+        return result;
+    }
+
+    /** Returns the hexadecimal numeral of the BYTES of a SHA-1 UID. */
+    public static String bytesToHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
     }
 
     /* READING AND WRITING FILE CONTENTS */
@@ -76,7 +112,8 @@ public class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each gitlike.object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
+     *  a String, a byte array or an InputStream, which is copied to the end
+     *  through a fixed-size buffer.  Throws IllegalArgumentException
      *  in case of problems. */
     public static void writeContents(File file, Object... contents) {
         try {
@@ -89,6 +126,8 @@ public class Utils {
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
+                } else if (obj instanceof InputStream) {
+                    copy((InputStream) obj, str);
                 } else {
                     str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
                 }
@@ -99,6 +138,20 @@ public class Utils {
         }
     }
 
+    /** Copy the rest of IN to OUT through a fixed-size buffer.
+     *  Returns the number of copied bytes. */
+    public static long copy(InputStream in, OutputStream out)
+        throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+            total += count;
+        }
+        return total;
+    }
+
     /** Return an gitlike.object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     public static <T extends Serializable> T readObject(File file,
@@ -154,4 +207,21 @@ public class Utils {
         }
     }
 
+    /** Return an gitlike.object of type T read from the serialized DATA,
+     *  casting it to EXPECTEDCLASS.
+     *  Throws IllegalArgumentException in case of problems. */
+    public static <T extends Serializable> T deserialize(byte[] data,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(data));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 }
@@ -0,0 +1,178 @@
+package gitlike.codec;
+
+import gitlike.GitLikeException;
+import gitlike.Utils;
+import gitlike.object.Content;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base class for hand-written versioned binary encodings.
+ * <p>
+ * Every encoded object starts with a header: magic "GL", type tag, format version.
+ * Objects written by older versions with Java serialization are recognized by the serialization
+ * stream magic and are still decoded.
+ */
+public abstract class BinaryCodec<T> implements ObjectCodec<T> {
+    private static final int MAGIC = 0x474c;
+    private static final int SERIALIZATION_MAGIC = 0xaced;
+    private static final int ID_LENGTH = Utils.UID_LENGTH / 2;
+
+    private final char type;
+    private final int version;
+    private final Class<T> objectClass;
+
+    /**
+     * Create codec
+     * @param type tag that identifies the type of encoded object
+     * @param version the latest format version, which is used for encoding
+     * @param objectClass class of objects, used to decode objects stored with Java serialization
+     */
+    protected BinaryCodec(char type, int version, Class<T> objectClass) {
+        this.type = type;
+        this.version = version;
+        this.objectClass = objectClass;
+    }
+
+    @Override
+    public void encode(T object, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeShort(MAGIC);
+        out.writeByte(type);
+        out.writeByte(version);
+        write(out, object);
+        out.flush();
+    }
+
+    @Override
+    public T decode(Content data) {
+        try (InputStream stream = new BufferedInputStream(data.open())) {
+            DataInputStream in = new DataInputStream(stream);
+            in.mark(2);
+            int magic = in.readUnsignedShort();
+            in.reset();
+
+            if (magic == SERIALIZATION_MAGIC)
+                return readSerialized(new LegacyObjectInputStream(in));
+
+            if (in.readUnsignedShort() != MAGIC || in.readUnsignedByte() != type)
+                throw new GitLikeException("Unknown object format.");
+            int dataVersion = in.readUnsignedByte();
+            if (dataVersion > version)
+                throw new GitLikeException("Unsupported object format version " + dataVersion + ".");
+            return read(in, dataVersion, data);
+        } catch (IOException | ClassNotFoundException | ClassCastException excp) {
+            throw new GitLikeException("Internal error decoding object.");
+        }
+    }
+
+    /**
+     * Write object fields using the latest format version
+     */
+    protected abstract void write(DataOutputStream out, T object) throws IOException;
+
+    /**
+     * Read object fields written with the given format version
+     * @param in stream positioned after the header
+     * @param data the whole stored data, for objects that read parts of it lazily
+     */
+    protected abstract T read(DataInputStream in, int version, Content data) throws IOException;
+
+    /**
+     * Read object written with Java serialization by older versions
+     */
+    protected T readSerialized(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        return objectClass.cast(in.readObject());
+    }
+
+    /**
+     * Write non-negative int using from 1 to 5 bytes
+     */
+    protected static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    protected static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable-length int");
+    }
+
+    protected static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        writeVarInt(out, value.length);
+        out.write(value);
+    }
+
+    protected static byte[] readBytes(DataInput in) throws IOException {
+        byte[] value = new byte[readVarInt(in)];
+        in.readFully(value);
+        return value;
+    }
+
+    /**
+     * Write content length followed by the content, streaming it through a fixed-size buffer.
+     * Content written this way should be the last field, so it can be read lazily with a slice.
+     */
+    protected static void writeContent(DataOutputStream out, Content content) throws IOException {
+        long size = content.size();
+        out.writeLong(size);
+        try (InputStream stream = content.open()) {
+            if (Utils.copy(stream, out) != size)
+                throw new IOException("Content changed while it was written");
+        }
+    }
+
+    protected static void writeString(DataOutput out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write SHA-1 id as 20 raw bytes
+     */
+    protected static void writeId(DataOutput out, String id) throws IOException {
+        out.write(Utils.hexToBytes(id));
+    }
+
+    protected static String readId(DataInput in) throws IOException {
+        byte[] id = new byte[ID_LENGTH];
+        in.readFully(id);
+        return Utils.bytesToHex(id);
+    }
+
+    /**
+     * Write SHA-1 id that can be null, using a one byte presence flag
+     */
+    protected static void writeOptionalId(DataOutput out, String id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null)
+            writeId(out, id);
+    }
+
+    protected static String readOptionalId(DataInput in) throws IOException {
+        if (!in.readBoolean())
+            return null;
+        return readId(in);
+    }
+}
@@ -0,0 +1,129 @@
+package gitlike.codec;
+
+import gitlike.GitLikeException;
+import gitlike.object.Blob;
+import gitlike.object.ByteContent;
+import gitlike.object.Content;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary encoding of blobs
+ * <p>
+ * Version 1: id, file name, content as a string
+ * Version 2: id, file name, content length, raw content bytes
+ * Version 3: id, file name, kind, then for full content: content length, raw content bytes
+ *  and for {@link DeltaContent}: base blob id, delta depth, content length, delta length, delta bytes
+ * Version 4: adds kind {@link ChunkedContent}: number of chunks, then chunk id and chunk length for each chunk
+ * Version 5: the file name is not stored, blobs are identified by content and the decoded blob has no file name
+ * <p>
+ * The content is always the last field, so it is not read while decoding,
+ * the decoded blob refers to the part of the stored data that holds it.
+ */
+public class BlobCodec extends BinaryCodec<Blob> {
+    private static final char TYPE = 'B';
+    private static final int VERSION = 5;
+
+    private static final int FULL = 0;
+    private static final int DELTA = 1;
+    private static final int CHUNKED = 2;
+
+    private final Function<String, Content> baseResolver;
+    private final Function<String, Content> chunkResolver;
+
+    /**
+     * Create codec for blobs that are always stored in full
+     */
+    public BlobCodec() {
+        this(null, null);
+    }
+
+    /**
+     * Create codec for blobs that can be stored as deltas or chunk lists
+     * @param baseResolver gives the content of the base blob of a delta by its id
+     * @param chunkResolver gives the content of a chunk by its id
+     */
+    public BlobCodec(Function<String, Content> baseResolver, Function<String, Content> chunkResolver) {
+        super(TYPE, VERSION, Blob.class);
+        this.baseResolver = baseResolver;
+        this.chunkResolver = chunkResolver;
+    }
+
+    @Override
+    protected void write(DataOutputStream out, Blob blob) throws IOException {
+        writeId(out, blob.getId());
+
+        if (blob.getContent() instanceof DeltaContent) {
+            DeltaContent content = (DeltaContent) blob.getContent();
+            out.writeByte(DELTA);
+            writeId(out, content.getBaseId());
+            writeVarInt(out, content.getDepth());
+            out.writeLong(content.size());
+            writeContent(out, content.getDelta());
+            return;
+        }
+
+        if (blob.getContent() instanceof ChunkedContent) {
+            ChunkedContent content = (ChunkedContent) blob.getContent();
+            out.writeByte(CHUNKED);
+            writeVarInt(out, content.getChunkIds().size());
+            for (int i = 0; i < content.getChunkIds().size(); i++) {
+                writeId(out, content.getChunkIds().get(i));
+                writeVarInt(out, content.getChunkSizes().get(i));
+            }
+            return;
+        }
+
+        out.writeByte(FULL);
+        writeContent(out, blob.getContent());
+    }
+
+    @Override
+    protected Blob read(DataInputStream in, int version, Content data) throws IOException {
+        String id = readId(in);
+        String fileName = version < 5 ? readString(in) : null;
+
+        int kind = version >= 3 ? in.readUnsignedByte() : FULL;
+
+        if (kind == DELTA) {
+            if (baseResolver == null)
+                throw new GitLikeException("Unexpected delta blob " + id + ".");
+            String baseId = readId(in);
+            int depth = readVarInt(in);
+            long size = in.readLong();
+            long deltaSize = in.readLong();
+            Content delta = data.slice(data.size() - deltaSize, deltaSize);
+            return new Blob(id, fileName, new DeltaContent(baseId, depth, size, delta, baseResolver));
+        }
+
+        if (kind == CHUNKED) {
+            if (chunkResolver == null)
+                throw new GitLikeException("Unexpected chunked blob " + id + ".");
+            int count = readVarInt(in);
+            List<String> chunkIds = new ArrayList<>(count);
+            List<Integer> chunkSizes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                chunkIds.add(readId(in));
+                chunkSizes.add(readVarInt(in));
+            }
+            return new Blob(id, fileName, new ChunkedContent(chunkIds, chunkSizes, chunkResolver));
+        }
+
+        long size = version == 1 ? readVarInt(in) : in.readLong();
+        return new Blob(id, fileName, data.slice(data.size() - size, size));
+    }
+
+    @Override
+    protected Blob readSerialized(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        LegacyObjectInputStream.LegacyBlob blob = (LegacyObjectInputStream.LegacyBlob) in.readObject();
+        byte[] content = blob.content.getBytes(StandardCharsets.UTF_8);
+        return new Blob(blob.id, blob.fileName, new ByteContent(content));
+    }
+}
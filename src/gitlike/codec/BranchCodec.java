@@ -0,0 +1,35 @@
+package gitlike.codec;
+
+import gitlike.object.Branch;
+import gitlike.object.Content;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary encoding of branches
+ * <p>
+ * Version 1: name, commit id
+ */
+public class BranchCodec extends BinaryCodec<Branch> {
+    private static final char TYPE = 'R';
+    private static final int VERSION = 1;
+
+    public BranchCodec() {
+        super(TYPE, VERSION, Branch.class);
+    }
+
+    @Override
+    protected void write(DataOutputStream out, Branch branch) throws IOException {
+        writeString(out, branch.getName());
+        writeString(out, branch.getCommitId());
+    }
+
+    @Override
+    protected Branch read(DataInputStream in, int version, Content data) throws IOException {
+        String name = readString(in);
+        String commitId = readString(in);
+        return new Branch(name, commitId);
+    }
+}
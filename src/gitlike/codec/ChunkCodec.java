@@ -0,0 +1,32 @@
+package gitlike.codec;
+
+import gitlike.object.Content;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary encoding of chunks of large files
+ * <p>
+ * Version 1: content length, raw content bytes
+ */
+public class ChunkCodec extends BinaryCodec<Content> {
+    private static final char TYPE = 'K';
+    private static final int VERSION = 1;
+
+    public ChunkCodec() {
+        super(TYPE, VERSION, Content.class);
+    }
+
+    @Override
+    protected void write(DataOutputStream out, Content chunk) throws IOException {
+        writeContent(out, chunk);
+    }
+
+    @Override
+    protected Content read(DataInputStream in, int version, Content data) throws IOException {
+        long size = in.readLong();
+        return data.slice(data.size() - size, size);
+    }
+}
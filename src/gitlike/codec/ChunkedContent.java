@@ -0,0 +1,87 @@
+package gitlike.codec;
+
+import gitlike.object.Content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Content stored as a list of chunks, the chunks are read one after another when the content is opened
+ */
+public class ChunkedContent implements Content {
+    private final List<String> chunkIds;
+    private final List<Integer> chunkSizes;
+    private final long size;
+    private final Function<String, Content> chunkResolver;
+
+    /**
+     * Create chunked content
+     * @param chunkIds ids of the chunks in content order
+     * @param chunkSizes sizes of the chunks in content order
+     * @param chunkResolver gives the content of a chunk by its id
+     */
+    public ChunkedContent(List<String> chunkIds, List<Integer> chunkSizes, Function<String, Content> chunkResolver) {
+        this.chunkIds = chunkIds;
+        this.chunkSizes = chunkSizes;
+        this.chunkResolver = chunkResolver;
+        long total = 0;
+        for (int chunkSize: chunkSizes) {
+            total += chunkSize;
+        }
+        this.size = total;
+    }
+
+    public List<String> getChunkIds() {
+        return chunkIds;
+    }
+
+    public List<Integer> getChunkSizes() {
+        return chunkSizes;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public InputStream open() {
+        return new InputStream() {
+            private int chunk;
+            private InputStream current;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int off, int len) throws IOException {
+                if (len == 0)
+                    return 0;
+                while (true) {
+                    if (current == null) {
+                        if (chunk == chunkIds.size())
+                            return -1;
+                        current = chunkResolver.apply(chunkIds.get(chunk++)).open();
+                    }
+                    int read = current.read(bytes, off, len);
+                    if (read > 0)
+                        return read;
+                    current.close();
+                    current = null;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (current != null)
+                    current.close();
+                current = null;
+            }
+        };
+    }
+}
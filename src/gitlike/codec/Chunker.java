@@ -0,0 +1,95 @@
+package gitlike.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Content-defined chunker in the style of FastCDC.
+ * <p>
+ * A gear rolling hash is computed over the data and a chunk ends where the hash matches a mask,
+ * so an edit only changes the chunks around it and the rest of the chunks stay identical.
+ * A stricter mask is used before the average chunk size and a looser one after it,
+ * which keeps chunk sizes close to the average.
+ * <p>
+ * Only one maximum-sized chunk is held in memory at a time.
+ */
+public class Chunker {
+    public static final int MIN_SIZE = 16 * 1024;
+    public static final int AVERAGE_SIZE = 64 * 1024;
+    public static final int MAX_SIZE = 256 * 1024;
+
+    /**
+     * Masks over the high bits of the hash, with 2 bits more and 2 bits less than log2 of the average size
+     */
+    private static final long STRICT_MASK = -1L << (64 - 18);
+    private static final long LOOSE_MASK = -1L << (64 - 14);
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        /* SplitMix64, so the table and therefore the chunk boundaries never change */
+        long state = 0x6a09e667f3bcc908L;
+        for (int i = 0; i < GEAR.length; i++) {
+            state += 0x9e3779b97f4a7c15L;
+            long value = state;
+            value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+            value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = value ^ (value >>> 31);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[MAX_SIZE];
+    private int length;
+    private boolean isEnded;
+
+    public Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Get the next chunk, returns null when the data is over
+     */
+    public byte[] next() throws IOException {
+        fill();
+        if (length == 0)
+            return null;
+
+        int cut = findCut();
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, length - cut);
+        length -= cut;
+        return chunk;
+    }
+
+    private void fill() throws IOException {
+        while (!isEnded && length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0)
+                isEnded = true;
+            else
+                length += read;
+        }
+    }
+
+    private int findCut() {
+        if (length <= MIN_SIZE)
+            return length;
+
+        long hash = 0;
+        int position = MIN_SIZE;
+        int normalEnd = Math.min(AVERAGE_SIZE, length);
+        for (; position < normalEnd; position++) {
+            hash = (hash << 1) + GEAR[buffer[position] & 0xff];
+            if ((hash & STRICT_MASK) == 0)
+                return position + 1;
+        }
+        for (; position < length; position++) {
+            hash = (hash << 1) + GEAR[buffer[position] & 0xff];
+            if ((hash & LOOSE_MASK) == 0)
+                return position + 1;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,107 @@
+package gitlike.codec;
+
+import gitlike.object.Commit;
+import gitlike.object.Content;
+import gitlike.object.TreeReader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Binary encoding of commits
+ * <p>
+ * Version 1: id, timestamp, parent id, merged parent id, log message, blob ids, blob file names
+ * Version 2: id, timestamp, parent id, merged parent id, log message, file name and blob id for each file
+ * Version 3: id, timestamp, parent id, merged parent id, log message, root tree id,
+ * then file name and blob id for each file if the commit has no tree
+ * <p>
+ * Older versions did not store which blob belongs to which file, the blobs of that time
+ * stored their file name, so it is read from them.
+ */
+public class CommitCodec extends BinaryCodec<Commit> {
+    private static final char TYPE = 'C';
+    private static final int VERSION = 3;
+
+    private final Function<String, String> blobFileNameResolver;
+    private final TreeReader treeReader;
+
+    /**
+     * Create codec
+     * @param blobFileNameResolver gives the file name stored in a blob by the blob id
+     * @param treeReader reads the files of trees, used by decoded commits
+     */
+    public CommitCodec(Function<String, String> blobFileNameResolver,
+                       TreeReader treeReader) {
+        super(TYPE, VERSION, Commit.class);
+        this.blobFileNameResolver = blobFileNameResolver;
+        this.treeReader = treeReader;
+    }
+
+    @Override
+    protected void write(DataOutputStream out, Commit commit) throws IOException {
+        writeId(out, commit.getId());
+        out.writeLong(commit.getTimestamp());
+        writeOptionalId(out, commit.getParentId());
+        writeOptionalId(out, commit.getMergedParentId());
+        writeString(out, commit.getLogMessage());
+        writeOptionalId(out, commit.getTreeId());
+        if (commit.getTreeId() != null)
+            return;
+
+        writeVarInt(out, commit.getBlobIds().size());
+        for (Map.Entry<String, String> entry: commit.getBlobIds().entrySet()) {
+            writeString(out, entry.getKey());
+            writeId(out, entry.getValue());
+        }
+    }
+
+    @Override
+    protected Commit read(DataInputStream in, int version, Content data) throws IOException {
+        String id = readId(in);
+        long timestamp = in.readLong();
+        String parentId = readOptionalId(in);
+        String mergedParentId = readOptionalId(in);
+        String logMessage = readString(in);
+        if (version >= 3) {
+            String treeId = readOptionalId(in);
+            if (treeId != null)
+                return new Commit(id, logMessage, parentId, mergedParentId, treeId, treeReader, timestamp);
+        }
+
+        SortedMap<String, String> blobIds = new TreeMap<>();
+        int count = readVarInt(in);
+        if (version == 1) {
+            for (int i = 0; i < count; i++) {
+                addBlobId(blobIds, readId(in));
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                String fileName = readString(in);
+                blobIds.put(fileName, readId(in));
+            }
+        }
+
+        return new Commit(id, logMessage, parentId, mergedParentId, blobIds, timestamp);
+    }
+
+    @Override
+    protected Commit readSerialized(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        LegacyObjectInputStream.LegacyCommit commit = (LegacyObjectInputStream.LegacyCommit) in.readObject();
+        SortedMap<String, String> blobIds = new TreeMap<>();
+        for (String blobId: commit.blobIds) {
+            addBlobId(blobIds, blobId);
+        }
+        return new Commit(commit.id, commit.logMessage, commit.parentId, commit.mergedParentId, blobIds,
+                commit.timestamp);
+    }
+
+    private void addBlobId(Map<String, String> blobIds, String blobId) {
+        blobIds.put(blobFileNameResolver.apply(blobId), blobId);
+    }
+}
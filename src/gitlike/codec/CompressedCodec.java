@@ -0,0 +1,134 @@
+package gitlike.codec;
+
+import gitlike.GitLikeException;
+import gitlike.object.Content;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
+/**
+ * Codec that compresses the data produced by another codec.
+ * <p>
+ * Compressed layout:
+ *  [magic "GZ"][compression id][compressed data][8 byte uncompressed length]
+ * The uncompressed length is written last, so objects are compressed while they are streamed.
+ * Data without the magic is passed to the wrapped codec unchanged,
+ * so objects written without compression are still readable.
+ */
+public class CompressedCodec<T> implements ObjectCodec<T> {
+    private static final int MAGIC = 0x475a;
+    static final int HEADER_LENGTH = 3;
+    static final int TRAILER_LENGTH = 8;
+
+    private final ObjectCodec<T> codec;
+    private final Supplier<Compression> compression;
+
+    /**
+     * Create codec
+     * @param codec the codec whose output is compressed
+     * @param compression the compression used for new objects
+     */
+    public CompressedCodec(ObjectCodec<T> codec, Supplier<Compression> compression) {
+        this.codec = codec;
+        this.compression = compression;
+    }
+
+    @Override
+    public void encode(T object, OutputStream out) throws IOException {
+        Compression compression = this.compression.get();
+        if (compression == Compression.NONE) {
+            codec.encode(object, out);
+            return;
+        }
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeShort(MAGIC);
+        header.writeByte(compression.getId());
+
+        CountingOutputStream counter = new CountingOutputStream(compression.compress(out));
+        codec.encode(object, counter);
+        counter.close();
+
+        header.writeLong(counter.count);
+        header.flush();
+    }
+
+    @Override
+    public T decode(Content data) {
+        int magic;
+        int compressionId;
+        try (DataInputStream in = new DataInputStream(data.open())) {
+            if (data.size() < HEADER_LENGTH + TRAILER_LENGTH)
+                return codec.decode(data);
+            magic = in.readUnsignedShort();
+            compressionId = in.readUnsignedByte();
+        } catch (IOException excp) {
+            throw new GitLikeException("Internal error decoding object.");
+        }
+
+        if (magic != MAGIC)
+            return codec.decode(data);
+        return codec.decode(new CompressedContent(data, Compression.fromId(compressionId)));
+    }
+
+    /**
+     * Counts the uncompressed bytes
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            out.write(bytes, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Uncompressed view of compressed data, decompressed every time it is opened
+     */
+    private static class CompressedContent implements Content {
+        private final Content data;
+        private final Compression compression;
+        private long size = -1;
+
+        private CompressedContent(Content data, Compression compression) {
+            this.data = data;
+            this.compression = compression;
+        }
+
+        @Override
+        public long size() {
+            if (size < 0) {
+                Content trailer = data.slice(data.size() - TRAILER_LENGTH, TRAILER_LENGTH);
+                try (DataInputStream in = new DataInputStream(trailer.open())) {
+                    size = in.readLong();
+                } catch (IOException excp) {
+                    throw new GitLikeException("Internal error decoding object.");
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            long length = data.size() - HEADER_LENGTH - TRAILER_LENGTH;
+            return compression.decompress(data.slice(HEADER_LENGTH, length).open());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package gitlike.codec;
+
+import gitlike.GitLikeException;
+import gitlike.Utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression algorithms for stored objects.
+ * Closing a compressing stream finishes the compressed data but leaves the underlying stream open.
+ */
+public enum Compression {
+    NONE(0, "none") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.flush();
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+
+    DEFLATE(1, "deflate") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(), Utils.BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    finish();
+                    def.end();
+                    out.flush();
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in, new Inflater(), Utils.BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    inf.end();
+                    super.close();
+                }
+            };
+        }
+    },
+
+    LZ(2, "lz") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return new LzOutputStream(out);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return new LzInputStream(in);
+        }
+    };
+
+    private final int id;
+    private final String name;
+
+    Compression(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Get the identifier stored in the header of compressed objects
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the name used in the repository config
+     */
+    public String getName() {
+        return name;
+    }
+
+    public abstract OutputStream compress(OutputStream out);
+
+    public abstract InputStream decompress(InputStream in);
+
+    public static Compression fromId(int id) {
+        for (Compression compression: values()) {
+            if (compression.id == id)
+                return compression;
+        }
+        throw new GitLikeException("Unknown compression " + id + ".");
+    }
+
+    public static Compression fromName(String name) {
+        for (Compression compression: values()) {
+            if (compression.name.equals(name))
+                return compression;
+        }
+        throw new GitLikeException("Unknown compression " + name + ".");
+    }
+}
@@ -0,0 +1,165 @@
+package gitlike.codec;
+
+import gitlike.GitLikeException;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Binary delta between two versions of a file.
+ * <p>
+ * Layout:
+ *  [source length][target length] followed by instructions
+ *  insert: [0][length][bytes]
+ *  copy from source: [1][source offset][length]
+ * All numbers are variable-length ints.
+ * <p>
+ * The source is indexed by hashes of aligned blocks, the target is scanned with a rolling hash,
+ * and every block match is extended in both directions before it is emitted as a copy.
+ */
+public class Delta {
+    private static final int BLOCK_SIZE = 16;
+    private static final int PRIME = 0x01000193;
+    private static final int INSERT = 0;
+    private static final int COPY = 1;
+
+    /**
+     * Compute the delta that turns the source into the target
+     */
+    public static byte[] create(byte[] source, byte[] target) {
+        int tableSize = Integer.highestOneBit(Math.max(1, source.length / BLOCK_SIZE) * 2);
+        int mask = tableSize - 1;
+        int[] table = new int[tableSize];
+        for (int i = 0; i + BLOCK_SIZE <= source.length; i += BLOCK_SIZE) {
+            int slot = hash(source, i) & mask;
+            if (table[slot] == 0)
+                table[slot] = i + 1;
+        }
+
+        int removeFactor = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++)
+            removeFactor *= PRIME;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, source.length);
+        writeVarInt(out, target.length);
+
+        int position = 0;
+        int insertStart = 0;
+        int hash = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+        while (position + BLOCK_SIZE <= target.length) {
+            int candidate = table[hash & mask] - 1;
+            if (candidate >= 0 && regionEquals(source, candidate, target, position)) {
+                int sourceStart = candidate;
+                int targetStart = position;
+                while (sourceStart > 0 && targetStart > insertStart
+                        && source[sourceStart - 1] == target[targetStart - 1]) {
+                    sourceStart--;
+                    targetStart--;
+                }
+                int sourceEnd = candidate + BLOCK_SIZE;
+                int targetEnd = position + BLOCK_SIZE;
+                while (sourceEnd < source.length && targetEnd < target.length
+                        && source[sourceEnd] == target[targetEnd]) {
+                    sourceEnd++;
+                    targetEnd++;
+                }
+
+                writeInsert(out, target, insertStart, targetStart);
+                out.write(COPY);
+                writeVarInt(out, sourceStart);
+                writeVarInt(out, targetEnd - targetStart);
+
+                position = targetEnd;
+                insertStart = targetEnd;
+                if (position + BLOCK_SIZE <= target.length)
+                    hash = hash(target, position);
+                continue;
+            }
+
+            if (position + BLOCK_SIZE < target.length)
+                hash = (hash - target[position] * removeFactor) * PRIME + target[position + BLOCK_SIZE];
+            position++;
+        }
+        writeInsert(out, target, insertStart, target.length);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Apply the delta to the source and return the target
+     */
+    public static byte[] apply(byte[] source, byte[] delta) {
+        try {
+            int[] position = {0};
+            if (readVarInt(delta, position) != source.length)
+                throw new GitLikeException("Delta does not match its base.");
+            byte[] target = new byte[readVarInt(delta, position)];
+
+            int output = 0;
+            while (position[0] < delta.length) {
+                int instruction = delta[position[0]++];
+                if (instruction == INSERT) {
+                    int length = readVarInt(delta, position);
+                    System.arraycopy(delta, position[0], target, output, length);
+                    position[0] += length;
+                    output += length;
+                } else if (instruction == COPY) {
+                    int offset = readVarInt(delta, position);
+                    int length = readVarInt(delta, position);
+                    System.arraycopy(source, offset, target, output, length);
+                    output += length;
+                } else {
+                    throw new GitLikeException("Corrupted delta.");
+                }
+            }
+
+            if (output != target.length)
+                throw new GitLikeException("Corrupted delta.");
+            return target;
+        } catch (IndexOutOfBoundsException excp) {
+            throw new GitLikeException("Corrupted delta.");
+        }
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int start, int end) {
+        if (start == end)
+            return;
+        out.write(INSERT);
+        writeVarInt(out, end - start);
+        out.write(target, start, end - start);
+    }
+
+    private static int hash(byte[] bytes, int position) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++)
+            hash = hash * PRIME + bytes[position + i];
+        return hash;
+    }
+
+    private static boolean regionEquals(byte[] source, int sourcePosition, byte[] target, int targetPosition) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (source[sourcePosition + i] != target[targetPosition + i])
+                return false;
+        }
+        return true;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = bytes[position[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new GitLikeException("Corrupted delta.");
+    }
+}
@@ -0,0 +1,67 @@
+package gitlike.codec;
+
+import gitlike.object.Content;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Function;
+
+/**
+ * Content stored as a delta against the content of another blob.
+ * The content is rebuilt in memory every time it is opened, the base itself may be a delta,
+ * so the length of the chain is limited when deltas are created.
+ */
+public class DeltaContent implements Content {
+    private final String baseId;
+    private final int depth;
+    private final long size;
+    private final Content delta;
+    private final Function<String, Content> baseResolver;
+
+    /**
+     * Create delta content
+     * @param baseId id of the blob the delta is applied to
+     * @param depth number of deltas that have to be applied to rebuild the content
+     * @param size length of the rebuilt content
+     * @param delta the delta produced by {@link Delta#create}
+     * @param baseResolver gives the content of a blob by its id
+     */
+    public DeltaContent(String baseId, int depth, long size, Content delta, Function<String, Content> baseResolver) {
+        this.baseId = baseId;
+        this.depth = depth;
+        this.size = size;
+        this.delta = delta;
+        this.baseResolver = baseResolver;
+    }
+
+    public String getBaseId() {
+        return baseId;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public Content getDelta() {
+        return delta;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        byte[] base;
+        try (InputStream in = baseResolver.apply(baseId).open()) {
+            base = in.readAllBytes();
+        }
+        byte[] deltaBytes;
+        try (InputStream in = delta.open()) {
+            deltaBytes = in.readAllBytes();
+        }
+        return new ByteArrayInputStream(Delta.apply(base, deltaBytes));
+    }
+}
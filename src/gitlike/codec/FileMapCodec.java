@@ -0,0 +1,45 @@
+package gitlike.codec;
+
+import gitlike.object.Content;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Binary encoding of blob ids by file path
+ * <p>
+ * Version 1: number of files, then path and blob id for each file
+ */
+public class FileMapCodec extends BinaryCodec<SortedMap<String, String>> {
+    private static final char TYPE = 'F';
+    private static final int VERSION = 1;
+
+    @SuppressWarnings("unchecked")
+    public FileMapCodec() {
+        super(TYPE, VERSION, (Class<SortedMap<String, String>>) (Class<?>) SortedMap.class);
+    }
+
+    @Override
+    protected void write(DataOutputStream out, SortedMap<String, String> files) throws IOException {
+        writeVarInt(out, files.size());
+        for (Map.Entry<String, String> entry: files.entrySet()) {
+            writeString(out, entry.getKey());
+            writeId(out, entry.getValue());
+        }
+    }
+
+    @Override
+    protected SortedMap<String, String> read(DataInputStream in, int version, Content data) throws IOException {
+        SortedMap<String, String> files = new TreeMap<>();
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            String path = readString(in);
+            files.put(path, readId(in));
+        }
+        return files;
+    }
+}
@@ -0,0 +1,57 @@
+package gitlike.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Reads objects written with Java serialization by older versions.
+ * Classes whose shape has changed since then are read into frozen copies of their old shape.
+ */
+class LegacyObjectInputStream extends ObjectInputStream {
+    private static final String BLOB_CLASS_NAME = "gitlike.object.Blob";
+    private static final String COMMIT_CLASS_NAME = "gitlike.object.Commit";
+
+    LegacyObjectInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+        ObjectStreamClass descriptor = super.readClassDescriptor();
+        if (descriptor.getName().equals(BLOB_CLASS_NAME))
+            return ObjectStreamClass.lookup(LegacyBlob.class);
+        if (descriptor.getName().equals(COMMIT_CLASS_NAME))
+            return ObjectStreamClass.lookup(LegacyCommit.class);
+        return descriptor;
+    }
+
+    /**
+     * Blob as it was stored before blob content became a stream of bytes
+     */
+    static class LegacyBlob implements Serializable {
+        private static final long serialVersionUID = -1318840581591891604L;
+
+        String id;
+        String fileName;
+        String content;
+    }
+
+    /**
+     * Commit as it was stored before blobs were identified by content only
+     */
+    static class LegacyCommit implements Serializable {
+        private static final long serialVersionUID = -1769498680037008837L;
+
+        String id;
+        Set<String> blobIds;
+        Set<String> blobFileNames;
+        String logMessage;
+        String parentId;
+        String mergedParentId;
+        long timestamp;
+    }
+}
@@ -0,0 +1,127 @@
+package gitlike.codec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompressor for data written by {@link LzOutputStream}
+ */
+class LzInputStream extends InputStream {
+    private final DataInputStream in;
+    private final byte[] compressed = new byte[LzOutputStream.BLOCK_SIZE];
+    private final byte[] block = new byte[LzOutputStream.BLOCK_SIZE];
+    private int blockLength;
+    private int position;
+    private boolean isFinished;
+
+    LzInputStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int count = Math.min(len, blockLength - position);
+        System.arraycopy(block, position, bytes, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return blockLength - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Decode the next block if the current one is exhausted.
+     * Returns false at the end of data.
+     */
+    private boolean fill() throws IOException {
+        if (position < blockLength)
+            return true;
+        if (isFinished)
+            return false;
+
+        int rawLength = in.readInt();
+        if (rawLength == 0) {
+            isFinished = true;
+            return false;
+        }
+        int storedLength = in.readInt();
+        if (rawLength < 0 || rawLength > block.length || storedLength < 0 || storedLength > rawLength)
+            throw new IOException("Corrupted LZ block");
+
+        if (storedLength == rawLength) {
+            in.readFully(block, 0, rawLength);
+        } else {
+            in.readFully(compressed, 0, storedLength);
+            decompressBlock(storedLength, rawLength);
+        }
+        blockLength = rawLength;
+        position = 0;
+        return true;
+    }
+
+    private void decompressBlock(int storedLength, int rawLength) throws IOException {
+        int input = 0;
+        int output = 0;
+        try {
+            while (true) {
+                int token = compressed[input++] & 0xff;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = compressed[input++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (input + literals > storedLength || output + literals > rawLength)
+                    throw new IOException("Corrupted LZ block");
+                System.arraycopy(compressed, input, block, output, literals);
+                input += literals;
+                output += literals;
+                if (output == rawLength)
+                    return;
+
+                int offset = (compressed[input] & 0xff) | (compressed[input + 1] & 0xff) << 8;
+                input += 2;
+                int matchLength = (token & 15) + LzOutputStream.MIN_MATCH;
+                if ((token & 15) == 15) {
+                    int b;
+                    do {
+                        b = compressed[input++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                if (offset == 0 || offset > output || output + matchLength > rawLength)
+                    throw new IOException("Corrupted LZ block");
+
+                /* the match may overlap the output, so it is copied byte by byte */
+                for (int i = 0; i < matchLength; i++) {
+                    block[output + i] = block[output - offset + i];
+                }
+                output += matchLength;
+            }
+        } catch (ArrayIndexOutOfBoundsException excp) {
+            throw new IOException("Corrupted LZ block");
+        }
+    }
+}
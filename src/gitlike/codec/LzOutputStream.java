@@ -0,0 +1,164 @@
+package gitlike.codec;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 compressor in the spirit of LZ4.
+ * <p>
+ * Data is split into blocks of up to 64 KiB, each written as:
+ *  [raw length][stored length][payload]
+ * Both lengths are written as 4 byte ints, a block that does not shrink is stored as is
+ * (stored length equals raw length). A block with raw length 0 marks the end of data.
+ * <p>
+ * A compressed payload is a sequence of:
+ *  [token][extra literal length][literals][2 byte offset][extra match length]
+ * The high nibble of the token is the literal count and the low nibble is the match length minus 4,
+ * a nibble of 15 is continued by bytes of 255 and a final byte below 255.
+ * The last sequence has only literals.
+ */
+class LzOutputStream extends OutputStream {
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int MIN_MATCH = 4;
+    static final int MAX_OFFSET = 65535;
+
+    /**
+     * Matches stop this far from the end of a block so that every block ends with literals
+     */
+    static final int LAST_LITERALS = 5;
+
+    private static final int HASH_BITS = 14;
+
+    private final DataOutputStream out;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 255 + 16];
+    private final int[] table = new int[1 << HASH_BITS];
+    private int blockLength;
+    private boolean isClosed;
+
+    LzOutputStream(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == BLOCK_SIZE)
+            writeBlock();
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        while (len > 0) {
+            if (blockLength == BLOCK_SIZE)
+                writeBlock();
+            int count = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(bytes, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Write the remaining data and the end marker, the underlying stream is left open
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed)
+            return;
+        isClosed = true;
+        if (blockLength > 0)
+            writeBlock();
+        out.writeInt(0);
+        out.flush();
+    }
+
+    private void writeBlock() throws IOException {
+        int length = compressBlock();
+        out.writeInt(blockLength);
+        if (length < blockLength) {
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+        } else {
+            out.writeInt(blockLength);
+            out.write(block, 0, blockLength);
+        }
+        blockLength = 0;
+    }
+
+    /**
+     * Greedy compression of the current block using a hash table of the last positions of 4 byte sequences.
+     * Returns the compressed length.
+     */
+    private int compressBlock() {
+        Arrays.fill(table, -1);
+        int position = 0;
+        int anchor = 0;
+        int output = 0;
+        int matchLimit = blockLength - LAST_LITERALS;
+
+        while (position + MIN_MATCH <= matchLimit) {
+            int sequence = readInt(block, position);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int candidate = table[hash];
+            table[hash] = position;
+
+            if (candidate < 0 || position - candidate > MAX_OFFSET || readInt(block, candidate) != sequence) {
+                position++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < matchLimit && block[candidate + matchLength] == block[position + matchLength])
+                matchLength++;
+
+            output = writeSequence(output, anchor, position - anchor, position - candidate, matchLength);
+            position += matchLength;
+            anchor = position;
+        }
+
+        int literals = blockLength - anchor;
+        int tokenPosition = output++;
+        compressed[tokenPosition] = (byte) (Math.min(literals, 15) << 4);
+        output = writeLength(output, literals);
+        System.arraycopy(block, anchor, compressed, output, literals);
+        return output + literals;
+    }
+
+    private int writeSequence(int output, int anchor, int literals, int offset, int matchLength) {
+        int tokenPosition = output++;
+        int extraMatch = matchLength - MIN_MATCH;
+        compressed[tokenPosition] = (byte) (Math.min(literals, 15) << 4 | Math.min(extraMatch, 15));
+        output = writeLength(output, literals);
+        System.arraycopy(block, anchor, compressed, output, literals);
+        output += literals;
+        compressed[output++] = (byte) offset;
+        compressed[output++] = (byte) (offset >>> 8);
+        return writeLength(output, extraMatch);
+    }
+
+    private int writeLength(int output, int length) {
+        if (length < 15)
+            return output;
+        length -= 15;
+        while (length >= 255) {
+            compressed[output++] = (byte) 255;
+            length -= 255;
+        }
+        compressed[output++] = (byte) length;
+        return output;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8
+                | (bytes[position + 2] & 0xff) << 16 | (bytes[position + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,26 @@
+package gitlike.codec;
+
+import gitlike.object.Content;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Converts objects to the bytes stored in the repository and back
+ */
+public interface ObjectCodec<T> {
+
+    /**
+     * Encode object to the stream
+     */
+    void encode(T object, OutputStream out) throws IOException;
+
+    /**
+     * Decode object from the stored data.
+     * Large parts of the data, such as file content, may be left in place and read lazily.
+     *
+     * @throws gitlike.GitLikeException if the data does not contain an object of this type
+     */
+    T decode(Content data);
+
+}
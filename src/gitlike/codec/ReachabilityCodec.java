@@ -0,0 +1,66 @@
+package gitlike.codec;
+
+import gitlike.object.CompressedBitmap;
+import gitlike.object.Content;
+import gitlike.object.Reachability;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of reachable commit sets
+ * <p>
+ * Version 1: commit id, number of runs, then for each run of consecutive positions
+ * the gap after the previous run and the run length
+ * <p>
+ * Commits are added to the graph in history order, so the commits reachable from a branch
+ * are mostly long runs of positions and a whole set usually takes a few bytes.
+ */
+public class ReachabilityCodec extends BinaryCodec<Reachability> {
+    private static final char TYPE = 'B';
+    private static final int VERSION = 1;
+
+    public ReachabilityCodec() {
+        super(TYPE, VERSION, Reachability.class);
+    }
+
+    @Override
+    protected void write(DataOutputStream out, Reachability reachability) throws IOException {
+        writeId(out, reachability.getCommitId());
+
+        /* start and end of each run, end exclusive */
+        List<int[]> runs = new ArrayList<>();
+        reachability.getCommits().forEach(position -> {
+            int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last[1] == position)
+                last[1]++;
+            else
+                runs.add(new int[] {position, position + 1});
+        });
+
+        writeVarInt(out, runs.size());
+        int previousEnd = 0;
+        for (int[] run: runs) {
+            writeVarInt(out, run[0] - previousEnd);
+            writeVarInt(out, run[1] - run[0]);
+            previousEnd = run[1];
+        }
+    }
+
+    @Override
+    protected Reachability read(DataInputStream in, int version, Content data) throws IOException {
+        String commitId = readId(in);
+        CompressedBitmap commits = new CompressedBitmap();
+        int count = readVarInt(in);
+        int previousEnd = 0;
+        for (int i = 0; i < count; i++) {
+            int start = previousEnd + readVarInt(in);
+            previousEnd = start + readVarInt(in);
+            commits.addRange(start, previousEnd);
+        }
+        return new Reachability(commitId, commits);
+    }
+}
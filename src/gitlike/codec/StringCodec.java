@@ -0,0 +1,31 @@
+package gitlike.codec;
+
+import gitlike.object.Content;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary encoding of plain strings
+ * <p>
+ * Version 1: UTF-8 string
+ */
+public class StringCodec extends BinaryCodec<String> {
+    private static final char TYPE = 'S';
+    private static final int VERSION = 1;
+
+    public StringCodec() {
+        super(TYPE, VERSION, String.class);
+    }
+
+    @Override
+    protected void write(DataOutputStream out, String value) throws IOException {
+        writeString(out, value);
+    }
+
+    @Override
+    protected String read(DataInputStream in, int version, Content data) throws IOException {
+        return readString(in);
+    }
+}
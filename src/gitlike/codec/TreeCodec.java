@@ -0,0 +1,58 @@
+package gitlike.codec;
+
+import gitlike.object.Content;
+import gitlike.object.Tree;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Binary encoding of directory trees
+ * <p>
+ * Version 1: id, name and blob id for each file, name and tree id for each subdirectory
+ */
+public class TreeCodec extends BinaryCodec<Tree> {
+    private static final char TYPE = 'T';
+    private static final int VERSION = 1;
+
+    public TreeCodec() {
+        super(TYPE, VERSION, Tree.class);
+    }
+
+    @Override
+    protected void write(DataOutputStream out, Tree tree) throws IOException {
+        writeId(out, tree.getId());
+        writeEntries(out, tree.getBlobIds());
+        writeEntries(out, tree.getTreeIds());
+    }
+
+    @Override
+    protected Tree read(DataInputStream in, int version, Content data) throws IOException {
+        String id = readId(in);
+        SortedMap<String, String> blobIds = readEntries(in);
+        SortedMap<String, String> treeIds = readEntries(in);
+        return new Tree(id, blobIds, treeIds);
+    }
+
+    private static void writeEntries(DataOutputStream out, SortedMap<String, String> entries) throws IOException {
+        writeVarInt(out, entries.size());
+        for (Map.Entry<String, String> entry: entries.entrySet()) {
+            writeString(out, entry.getKey());
+            writeId(out, entry.getValue());
+        }
+    }
+
+    private static SortedMap<String, String> readEntries(DataInputStream in) throws IOException {
+        SortedMap<String, String> entries = new TreeMap<>();
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            entries.put(name, readId(in));
+        }
+        return entries;
+    }
+}
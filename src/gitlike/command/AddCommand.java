@@ -1,57 +1,142 @@
 package gitlike.command;
 
-import gitlike.Utils;
 import gitlike.GitLikeException;
+import gitlike.manager.BlobManager;
+import gitlike.manager.FileMonitor;
 import gitlike.manager.StageManager;
+import gitlike.manager.WorkingTree;
 import gitlike.object.Blob;
 import gitlike.Repository;
 import gitlike.object.Commit;
+import gitlike.object.FileContent;
+import gitlike.object.FileStat;
+import gitlike.object.IndexEntry;
 
-import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
- * The command for adding a file to the staging area.
- * args: add [file name]
+ * The command for adding files to the staging area.
+ * A path can be a file, a directory whose files are added recursively, "." for all files, or a glob pattern.
+ * Files matched by the ignore file are added only when they are given by name.
+ * args: add [path]...
  */
 public class AddCommand implements Command {
 
     @Override
     public String execute(String... args) {
-        final int NUM_ARGS = 2;
-        if (args.length != NUM_ARGS)
+        final int MIN_NUM_ARGS = 2;
+        if (args.length < MIN_NUM_ARGS)
             throw new GitLikeException("Incorrect operands.");
 
         Repository repository = new Repository();
-        String fileName = args[1];
 
-        add(repository, fileName);
+        add(repository, Arrays.asList(args).subList(1, args.length));
 
         return null;
     }
 
     static void add(Repository repository, String fileName) {
+        add(repository, List.of(fileName));
+    }
+
+    /**
+     * Stage the files selected by the paths.
+     * Files whose stat data did not change since they were hashed are not hashed again,
+     * other files are read once each in parallel, hashed and their new content is stored by the reading threads,
+     * and the index is written once.
+     * While the file monitor runs, adding all files reads only the files it reports as changed.
+     */
+    static void add(Repository repository, List<String> pathspecs) {
         if (!repository.isInitialized())
             throw new GitLikeException("Not in an initialized GitLike directory.");
 
-        File file = new File(fileName);
+        WorkingTree workingTree = repository.getWorkingTree();
+        FileMonitor fileMonitor = repository.getFileMonitor();
+        SortedSet<String> fileNames = new TreeSet<>();
+        Set<String> changedPaths = null;
+        for (String pathspec: pathspecs) {
+            /* while the file monitor runs, only changed files can differ from the index */
+            if (changedPaths == null && workingTree.isWholeTree(pathspec)) {
+                changedPaths = fileMonitor.getChangedPaths();
+                if (changedPaths != null) {
+                    fileNames.addAll(workingTree.getChangedFiles(changedPaths).keySet());
+                    continue;
+                }
+            }
 
-        if (!file.exists())
-            throw new GitLikeException("File does not exist.");
+            SortedSet<String> files = workingTree.getFiles(pathspec);
+            if (files.isEmpty())
+                throw new GitLikeException("File does not exist.");
+            fileNames.addAll(files);
+        }
 
+        Commit currentCommit = repository.getCurrentCommit();
+        BlobManager blobManager = repository.getBlobManager();
         StageManager stageManager = repository.getStageManager();
+        List<IndexEntry> entries = new ArrayList<>();
+        Map<String, FileStat> stats = new HashMap<>();
+        List<String> changedFileNames = new ArrayList<>();
 
-        stageManager.removeRemovalFile(fileName);
+        /* stat data is read before hashing, so a file that changes while it is hashed is hashed again later */
+        for (String fileName: fileNames) {
+            FileStat stat = FileStat.read(workingTree.getFile(fileName));
+            String blobId = stageManager.getCachedBlobId(fileName, stat);
+            if (blobId != null && blobManager.containsBlob(blobId)) {
+                Blob blob = new Blob(blobId, fileName, new FileContent(workingTree.getFile(fileName)));
+                entries.add(createEntry(currentCommit, blobManager, blob, stat));
+            } else {
+                stats.put(fileName, stat);
+                changedFileNames.add(fileName);
+            }
+        }
 
-        String content = Utils.readContentsAsString(file);
-        Blob blob = new Blob(fileName, content);
+        /* the blob id and the stored content come from the same read of the file */
+        workingTree.readBlobs(changedFileNames,
+                blob -> stage(currentCommit, blobManager, blob, stats.get(blob.getFileName())),
+                (fileName, entry) -> entries.add(entry));
 
-        Commit currentCommit = repository.getCurrentCommit();
+        stageManager.update(entries);
 
-        if (currentCommit.containsBlob(blob.getId())) {
-            stageManager.removeAdditionFile(fileName);
+        if (changedPaths != null) {
+            Set<String> unmatchedPaths = new HashSet<>(changedPaths);
+            unmatchedPaths.removeAll(fileNames);
+            fileMonitor.update(unmatchedPaths);
         }
-        else {
-            stageManager.addAdditionFile(fileName, content);
+    }
+
+    /**
+     * Create the index entry of a working file and store its content if it differs from the current commit.
+     * New content is stored with the current version of the file as delta base.
+     * Called from several threads.
+     */
+    private static IndexEntry stage(Commit currentCommit, BlobManager blobManager, Blob blob, FileStat stat) {
+        IndexEntry entry = createEntry(currentCommit, blobManager, blob, stat);
+        if (entry.getState() == IndexEntry.State.ADDED && !blobManager.containsBlob(blob.getId())) {
+            String currentBlobId = currentCommit.getBlobId(blob.getFileName());
+            Blob base = currentBlobId == null ? null : blobManager.getBlob(currentBlobId);
+            blobManager.saveBlob(blob, base);
         }
+        return entry;
+    }
+
+    /**
+     * Create the index entry of a working file, which is staged if it differs from the current commit
+     */
+    private static IndexEntry createEntry(Commit currentCommit, BlobManager blobManager, Blob blob, FileStat stat) {
+        String fileName = blob.getFileName();
+        String currentBlobId = currentCommit.getBlobId(fileName);
+        if (blob.getId().equals(currentBlobId))
+            return new IndexEntry(fileName, blob.getId(), IndexEntry.State.CACHED, stat);
+        if (currentBlobId != null && blobManager.isOlderBlobOf(currentBlobId, blob.getContent()))
+            return new IndexEntry(fileName, currentBlobId, IndexEntry.State.CACHED, stat);
+        return new IndexEntry(fileName, blob.getId(), IndexEntry.State.ADDED, stat);
     }
 }
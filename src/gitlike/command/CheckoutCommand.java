@@ -6,9 +6,14 @@ import gitlike.object.Blob;
 import gitlike.object.Branch;
 import gitlike.GitLikeException;
 import gitlike.object.Commit;
+import gitlike.object.FileStat;
+import gitlike.object.IndexEntry;
 
 import java.io.File;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Command that can do a few different things:
@@ -60,22 +65,16 @@ public class CheckoutCommand implements Command {
         if (!repository.isInitialized())
             throw new GitLikeException("Not in an initialized GitLike directory.");
 
-        if (!repository.getCommitManager().containsCommit(commitId))
-            throw new GitLikeException("No commit with that id exists.");
-
         Commit commit = repository.getCommitManager().getCommit(commitId);
+        if (commit == null)
+            throw new GitLikeException("No commit with that id exists.");
 
-        if (!commit.containsFile(fileName))
+        String blobId = commit.getBlobId(fileName);
+        if (blobId == null)
             throw new GitLikeException("File does not exist in that commit");
 
-        for (String blobId: commit.getBlobIds()) {
-            Blob blob = repository.getBlobManager().getBlob(blobId);
-            if (blob.getFileName().equals(fileName)) {
-                File file = new File(fileName);
-                Utils.writeContents(file, blob.getContent());
-                return;
-            }
-        }
+        Blob blob = repository.getBlobManager().getBlob(blobId, fileName);
+        blob.writeTo(new File(fileName));
     }
 
     static void checkoutBranch(Repository repository, String branchName) {
@@ -103,41 +102,82 @@ public class CheckoutCommand implements Command {
 
         CommitManager commitManager = repository.getCommitManager();
 
-        if (!commitManager.containsCommit(commitId))
+        Commit checkedCommit = commitManager.getCommit(commitId);
+        if (checkedCommit == null)
             throw new GitLikeException("No commit with that id exists.");
 
         BlobManager blobManager = repository.getBlobManager();
         StageManager stageManager = repository.getStageManager();
+        TreeManager treeManager = repository.getTreeManager();
+        WorkingTree workingTree = repository.getWorkingTree();
 
         Commit currentCommit = repository.getCurrentCommit();
-        Commit checkedCommit = commitManager.getCommit(commitId);
-
-        Set<Blob> checkedBlobs = blobManager.getCommitBlobs(checkedCommit);
 
-        for (Blob blob: checkedBlobs) {
-            String fileName = blob.getFileName();
-            File workingDirFile = new File(fileName);
-            if (workingDirFile.exists()
-                    && !currentCommit.containsFile(fileName)
-                    && !stageManager.containAdditionFile(fileName))
+        /* only files that differ between the commits are written or removed, equal subtrees are not read.
+           Like in git, local changes of files that are equal in both commits are kept. */
+        SortedMap<String, String> changes = treeManager.getChanges(treeManager.getTreeId(currentCommit),
+                treeManager.getTreeId(checkedCommit));
+
+        SortedMap<String, String> writtenBlobIds = new TreeMap<>();
+        for (Map.Entry<String, String> change: changes.entrySet()) {
+            String fileName = change.getKey();
+            if (change.getValue() == null)
+                continue;
+            if (isInTheWay(currentCommit, stageManager, workingTree, fileName))
                 throw new GitLikeException("There is an untracked file in the way; delete it, or add and commit it first.");
+            writtenBlobIds.put(fileName, change.getValue());
         }
 
-        for (Blob blob: checkedBlobs) {
-            String fileName = blob.getFileName();
-            File workingDirFile = new File(fileName);
-            Utils.writeContents(workingDirFile, blob.getContent());
+        /* removed files are deleted first, a file can replace a folder of removed files and the other way round */
+        Map<String, IndexEntry> changedEntries = new HashMap<>();
+        for (Map.Entry<String, String> change: changes.entrySet()) {
+            if (change.getValue() == null) {
+                workingTree.deleteFile(change.getKey());
+                changedEntries.put(change.getKey(), null);
+            }
         }
 
-        Set<Blob> currentBlobs = blobManager.getCommitBlobs(currentCommit);
-        for (Blob blob: currentBlobs) {
-            String fileName = blob.getFileName();
-            if (!checkedCommit.containsFile(fileName)) {
-                File workingDirFile = new File(blob.getFileName());
-                workingDirFile.delete();
-            }
+        /* no file is written before all untracked files were checked */
+        workingTree.writeFiles(writtenBlobIds,
+                (fileName, blobId) -> blobManager.getBlob(blobId, fileName),
+                repository.getConfigManager().getCheckoutThreads());
+
+        /* written files are cached with their new stat data, so the next checkout does not write them again */
+        for (Map.Entry<String, String> written: writtenBlobIds.entrySet()) {
+            String fileName = written.getKey();
+            changedEntries.put(fileName, new IndexEntry(fileName, written.getValue(), IndexEntry.State.CACHED,
+                    FileStat.read(workingTree.getFile(fileName))));
+        }
+
+        stageManager.clear(changedEntries);
+    }
+
+    /**
+     * Check if writing a file would overwrite a working file that is not tracked: an untracked file
+     * at the path or at one of its folders, or a folder at the path with files not tracked by the current commit.
+     * Files staged for addition at the path itself may be overwritten.
+     */
+    private static boolean isInTheWay(Commit currentCommit, StageManager stageManager, WorkingTree workingTree,
+                                      String fileName) {
+        for (int end = fileName.indexOf('/'); end >= 0; end = fileName.indexOf('/', end + 1)) {
+            String folder = fileName.substring(0, end);
+            FileStat stat = FileStat.read(workingTree.getFile(folder));
+            if (stat == null)
+                return false;
+            if (!stat.isDirectory())
+                return !currentCommit.containsFile(folder) && !stageManager.containAdditionFile(folder);
         }
 
-        stageManager.clear();
+        FileStat stat = FileStat.read(workingTree.getFile(fileName));
+        if (stat == null)
+            return false;
+        if (!stat.isDirectory())
+            return !currentCommit.containsFile(fileName) && !stageManager.containAdditionFile(fileName);
+        /* only files of the current commit are deleted, other files would keep the folder in the way */
+        for (String path: workingTree.getAllPaths(fileName)) {
+            if (!currentCommit.containsFile(path))
+                return true;
+        }
+        return false;
     }
 }
@@ -1,15 +1,15 @@
 package gitlike.command;
 
 import gitlike.GitLikeException;
-import gitlike.manager.BlobManager;
 import gitlike.Repository;
 import gitlike.manager.StageManager;
-import gitlike.object.Blob;
+import gitlike.manager.TreeManager;
 import gitlike.object.Branch;
 import gitlike.object.Commit;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Command to commit changes
@@ -40,34 +40,26 @@ public class CommitCommand implements Command {
             throw new GitLikeException("Please enter a commit message.");
 
         StageManager stageManager = repository.getStageManager();
-        Set<Blob> additionBlobs = stageManager.getAllAdditionBlobs();
-        Set<String> removalFileNames = new HashSet<>(stageManager.getAllRemovalFiles());
+        SortedMap<String, String> additionBlobIds = stageManager.getAllAdditionBlobIds();
+        List<String> removalFileNames = stageManager.getAllRemovalFiles();
 
-        if (additionBlobs.isEmpty() && removalFileNames.isEmpty())
+        if (additionBlobIds.isEmpty() && removalFileNames.isEmpty())
             throw new GitLikeException("No changes added to the commit.");
 
-        BlobManager blobManager = repository.getBlobManager();
+        TreeManager treeManager = repository.getTreeManager();
         Commit oldCommit = repository.getCurrentCommit();
-        Set<Blob> oldBlobs = blobManager.getCommitBlobs(oldCommit);
+        String oldTreeId = treeManager.getTreeId(oldCommit);
 
-        Set<Blob> newBlobs = new HashSet<>();
-
-        for (Blob blob: additionBlobs) {
-            blobManager.saveBlob(blob);
-            newBlobs.add(blob);
-        }
-
-        Set<String> additionBlobNames = new HashSet<>();
-        for (Blob blob: additionBlobs) {
-            additionBlobNames.add(blob.getFileName());
-        }
-
-        for (Blob blob: oldBlobs) {
-            if (!additionBlobNames.contains(blob.getFileName()) && !removalFileNames.contains(blob.getFileName()))
-                newBlobs.add(blob);
+        /* only the trees of directories with changed files are read and written */
+        SortedMap<String, String> changes = new TreeMap<>();
+        for (String fileName: removalFileNames) {
+            changes.put(fileName, null);
         }
+        /* content of addition files is stored when they are staged */
+        changes.putAll(additionBlobIds);
+        String treeId = treeManager.applyChanges(oldTreeId, changes);
 
-        Commit newCommit = new Commit(logMessage, oldCommit.getId(), mergedParentId, newBlobs);
+        Commit newCommit = new Commit(logMessage, oldCommit.getId(), mergedParentId, treeId, treeManager);
         repository.getCommitManager().saveCommit(newCommit);
 
         Branch headBranch = new Branch(repository.getCurrentBranch().getName(), newCommit.getId());
@@ -0,0 +1,45 @@
+package gitlike.command;
+
+import gitlike.GitLikeException;
+import gitlike.Repository;
+import gitlike.manager.ConfigManager;
+
+/**
+ * Command to read or change a repository setting
+ * usage:
+ *  config [key]
+ *  config [key] [value]
+ */
+public class ConfigCommand implements Command {
+
+    @Override
+    public String execute(String... args) {
+        Repository repository = new Repository();
+
+        switch (args.length) {
+            case 2:
+                return getConfig(repository, args[1]);
+            case 3:
+                setConfig(repository, args[1], args[2]);
+                return null;
+            default:
+                throw new GitLikeException("Incorrect operands.");
+        }
+    }
+
+    static String getConfig(Repository repository, String key) {
+        if (!repository.isInitialized())
+            throw new GitLikeException("Not in an initialized GitLike directory.");
+
+        return repository.getConfigManager().get(key);
+    }
+
+    static void setConfig(Repository repository, String key, String value) {
+        if (!repository.isInitialized())
+            throw new GitLikeException("Not in an initialized GitLike directory.");
+
+        ConfigManager configManager = repository.getConfigManager();
+        configManager.set(key, value);
+    }
+
+}
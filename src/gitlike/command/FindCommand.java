@@ -2,43 +2,56 @@ package gitlike.command;
 
 import gitlike.GitLikeException;
 import gitlike.Repository;
-import gitlike.object.Commit;
+
+import java.util.List;
 
 /**
- * Find all commits with a given log message
- * usage: find [log message]
+ * Find all commits with a given log message, or with --grep all commits whose log message contains the text
+ * usage:
+ *  find [log message]
+ *  find --grep [text]
  */
 public class FindCommand implements Command {
 
     @Override
     public String execute(String... args) {
-        final int NUM_ARGS = 2;
-        if (args.length != NUM_ARGS)
-            throw new GitLikeException("Incorrect operands.");
-
         Repository repository = new Repository();
-        String logMessage = args[1];
 
-        return find(repository, logMessage);
+        switch (args.length) {
+            case 2:
+                return find(repository, args[1]);
+            case 3:
+                if (!args[1].equals("--grep"))
+                    throw new GitLikeException("Incorrect operands.");
+                return grep(repository, args[2]);
+            default:
+                throw new GitLikeException("Incorrect operands.");
+        }
     }
 
     static String find(Repository repository, String logMessage) {
         if (!repository.isInitialized())
             throw new GitLikeException("Not in an initialized GitLike directory.");
 
-        StringBuilder resultBuilder = new StringBuilder();
+        return formatIds(repository.getCommitManager().findByMessage(logMessage));
+    }
 
-        for (Commit commit: repository.getCommitManager().getAllCommits()) {
-            if (commit.getLogMessage().equals(logMessage))
-                resultBuilder.append(commit.getId()).append(System.lineSeparator());
-        }
+    static String grep(Repository repository, String text) {
+        if (!repository.isInitialized())
+            throw new GitLikeException("Not in an initialized GitLike directory.");
 
-        String result = resultBuilder.toString();
+        return formatIds(repository.getCommitManager().findByMessagePart(text));
+    }
 
-        if (result.isBlank())
+    private static String formatIds(List<String> ids) {
+        if (ids.isEmpty())
             throw new GitLikeException("Found no commit with that message.");
 
-        return result;
+        StringBuilder result = new StringBuilder();
+        for (String id: ids) {
+            result.append(id).append(System.lineSeparator());
+        }
+        return result.toString();
     }
 
 }
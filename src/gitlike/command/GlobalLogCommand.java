@@ -2,12 +2,19 @@ package gitlike.command;
 
 import gitlike.GitLikeException;
 import gitlike.Repository;
-import gitlike.object.Commit;
+import gitlike.Utils;
+import gitlike.manager.TimestampOrderedCommits;
 
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
- * Command to get information about all commits
+ * Command to get information about all commits, the most recent first.
+ * Commits are printed while they are read.
  * usage: global-log
  */
 public class GlobalLogCommand implements Command {
@@ -19,22 +26,30 @@ public class GlobalLogCommand implements Command {
             throw new GitLikeException("Incorrect operands.");
 
         Repository repository = new Repository();
-        return globalLog(repository);
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)),
+                Utils.BUFFER_SIZE);
+        try {
+            try {
+                globalLog(repository, out);
+            } finally {
+                out.flush();
+            }
+        } catch (IOException excp) {
+            /* the output was closed, for example by a pager, so the rest of the commits are not needed */
+        }
+        return null;
     }
 
-    static String globalLog(Repository repository) {
+    static void globalLog(Repository repository, Writer out) throws IOException {
         if (!repository.isInitialized())
             throw new GitLikeException("Not in an initialized GitLike directory.");
 
-        StringBuilder result = new StringBuilder();
-        List<Commit> allCommits = repository.getCommitManager().getAllCommits();
-        for (int i = 0; i < allCommits.size(); i++) {
-            result.append(allCommits.get(i));
-            if (i != allCommits.size() - 1)
-                result.append(System.lineSeparator());
+        try (TimestampOrderedCommits commits = repository.getCommitManager().getAllCommitsByTimestamp()) {
+            while (commits.hasNext()) {
+                out.write(commits.next().toString());
+                out.write(System.lineSeparator());
+            }
         }
-
-        return result.toString();
     }
 
 }
@@ -2,9 +2,12 @@ package gitlike.command;
 
 import gitlike.GitLikeException;
 import gitlike.Repository;
+import gitlike.manager.TreeManager;
 import gitlike.object.Branch;
 import gitlike.object.Commit;
 
+import java.util.TreeMap;
+
 /**
  * Command to create a new GitLike version-control system in the current directory
  * usage: init
@@ -32,7 +35,9 @@ public class InitCommand implements Command {
         repository.initialize();
 
         String logMessage = "initial commit";
-        Commit initialCommit = new Commit(logMessage, null, null, null, 0);
+        TreeManager treeManager = repository.getTreeManager();
+        Commit initialCommit = new Commit(logMessage, null, null, treeManager.saveFiles(new TreeMap<>()),
+                treeManager, 0);
         repository.getCommitManager().saveCommit(initialCommit);
 
         String branchName = "master";
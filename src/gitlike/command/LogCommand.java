@@ -2,41 +2,92 @@ package gitlike.command;
 
 import gitlike.GitLikeException;
 import gitlike.Repository;
-import gitlike.object.Commit;
-import gitlike.manager.CommitManager;
+import gitlike.Utils;
+import gitlike.manager.CommitWalk;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
- * Command to get information about the head commit and all its ancestors
- * usage: log
+ * Command to get information about the head commit and its ancestors.
+ * Commits are printed while the history is walked, by default only first parents are followed.
+ * usage: log [-n count | --max-count=count] [--skip=count] [--first-parent | --all-parents]
  */
 public class LogCommand implements Command {
 
     @Override
     public String execute(String... args) {
-        final int NUM_ARGS = 1;
-        if (args.length != NUM_ARGS)
-            throw new GitLikeException("Incorrect operands.");
+        int maxCount = Integer.MAX_VALUE;
+        int skip = 0;
+        boolean isFirstParentOnly = true;
 
-        Repository repository = new Repository();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-n") || arg.equals("--max-count")) {
+                maxCount = parseCount(i + 1 < args.length ? args[++i] : null);
+            } else if (arg.startsWith("--max-count=")) {
+                maxCount = parseCount(arg.substring("--max-count=".length()));
+            } else if (arg.equals("--skip")) {
+                skip = parseCount(i + 1 < args.length ? args[++i] : null);
+            } else if (arg.startsWith("--skip=")) {
+                skip = parseCount(arg.substring("--skip=".length()));
+            } else if (arg.equals("--first-parent")) {
+                isFirstParentOnly = true;
+            } else if (arg.equals("--all-parents")) {
+                isFirstParentOnly = false;
+            } else {
+                throw new GitLikeException("Incorrect operands.");
+            }
+        }
 
-        return log(repository);
+        Repository repository = new Repository();
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)),
+                Utils.BUFFER_SIZE);
+        try {
+            try {
+                log(repository, maxCount, skip, isFirstParentOnly, out);
+            } finally {
+                out.flush();
+            }
+        } catch (IOException excp) {
+            /* the output was closed, for example by a pager, so the rest of the history is not needed */
+        }
+        return null;
     }
 
-    static String log(Repository repository) {
+    /**
+     * Print commits of the current branch
+     * @param maxCount the maximum number of printed commits
+     * @param skip the number of commits skipped before printing
+     * @param isFirstParentOnly whether merged parents are not followed
+     * @param out the output commits are written to as they are read
+     */
+    static void log(Repository repository, int maxCount, int skip, boolean isFirstParentOnly, Writer out)
+            throws IOException {
         if (!repository.isInitialized())
             throw new GitLikeException("Not in an initialized GitLike directory.");
 
-        StringBuilder result = new StringBuilder();
-
-        CommitManager commitManager = repository.getCommitManager();
-        Commit commit = repository.getCurrentCommit();
-
-        while (commit.getParentId() != null) {
-            result.append(commit).append(System.lineSeparator());
-            commit = commitManager.getCommit(commit.getParentId());
+        CommitWalk walk = repository.getCommitManager().walk(repository.getCurrentBranch().getCommitId(),
+                isFirstParentOnly);
+        walk.skip(skip);
+        for (int count = 0; count < maxCount && walk.hasNext(); count++) {
+            out.write(walk.next().toString());
+            out.write(System.lineSeparator());
         }
-        result.append(commit);
+    }
 
-        return result.toString();
+    private static int parseCount(String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count < 0)
+                throw new GitLikeException("Incorrect operands.");
+            return count;
+        } catch (NumberFormatException excp) {
+            throw new GitLikeException("Incorrect operands.");
+        }
     }
 }
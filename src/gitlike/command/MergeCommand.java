@@ -2,14 +2,20 @@ package gitlike.command;
 
 import gitlike.Repository;
 import gitlike.Utils;
+import gitlike.manager.BlobManager;
+import gitlike.manager.BranchManager;
 import gitlike.manager.StageManager;
-import gitlike.object.Blob;
 import gitlike.object.Branch;
 import gitlike.GitLikeException;
 import gitlike.object.Commit;
+import gitlike.object.IndexEntry;
+import gitlike.manager.CommitGraph;
 import gitlike.manager.CommitManager;
+import gitlike.manager.MergeBase;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -49,138 +55,112 @@ public class MergeCommand implements Command {
             throw new GitLikeException("You have uncommitted changes.");
 
         CommitManager commitManager = repository.getCommitManager();
+        BranchManager branchManager = repository.getBranchManager();
         Commit headCommit = repository.getCurrentCommit();
         Commit branchCommit = commitManager.getCommit(branch.getCommitId());
-        Commit splitCommit = getSplitPoint(repository, headCommit, branchCommit);
 
-        if (splitCommit.equals(branchCommit))
+        if (branchManager.isReachable(branchCommit.getId(), head.getName()))
             return "Given branch is an ancestor of the current branch.";
 
-        if (splitCommit.equals(headCommit)) {
+        if (branchManager.isReachable(headCommit.getId(), branchName)) {
             CheckoutCommand.checkoutBranch(repository, branchName);
             repository.setCurrentBranch(head.getName());
-            repository.getBranchManager().saveBranch(new Branch(head.getName(), branch.getCommitId()));
+            branchManager.saveBranch(new Branch(head.getName(), branch.getCommitId()));
             return "Current branch fast-forwarded.";
         }
 
-        Map<String, Blob> headBlobMap = getNameToBlobMap(repository, headCommit);
-        Map<String, Blob> branchBlobMap = getNameToBlobMap(repository, branchCommit);
-        Map<String, Blob> splitBlobMap = getNameToBlobMap(repository, splitCommit);
+        Commit splitCommit = getSplitPoint(repository, headCommit, branchCommit);
+
+        SortedMap<String, String> headBlobIds = headCommit.getBlobIds();
+        SortedMap<String, String> branchBlobIds = branchCommit.getBlobIds();
+        SortedMap<String, String> splitBlobIds = splitCommit == null
+                ? Collections.emptySortedMap() : splitCommit.getBlobIds();
 
         StageManager stageManager = repository.getStageManager();
-        for (String fileName: branchBlobMap.keySet()) {
+        for (String fileName: branchBlobIds.keySet()) {
             File workingDirFile = new File(fileName);
             if (workingDirFile.exists()
-                    && !headCommit.containsFile(fileName)
+                    && !headBlobIds.containsKey(fileName)
                     && !stageManager.containAdditionFile(fileName)) {
                 throw new GitLikeException("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
 
-        Set<String> allFiles = new HashSet<>();
-        allFiles.addAll(headBlobMap.keySet());
-        allFiles.addAll(branchBlobMap.keySet());
-        allFiles.addAll(splitBlobMap.keySet());
+        Set<String> allFiles = new TreeSet<>();
+        allFiles.addAll(headBlobIds.keySet());
+        allFiles.addAll(branchBlobIds.keySet());
+        allFiles.addAll(splitBlobIds.keySet());
 
-        boolean isConflicted = false;
+        /* files are compared by blob id, content is read only for files that are written */
+        BlobManager blobManager = repository.getBlobManager();
+        List<IndexEntry> additions = new ArrayList<>();
+        List<String> conflictedFiles = new ArrayList<>();
         for (String fileName: allFiles) {
-            Blob headBlob = headBlobMap.get(fileName);
-            Blob branchBlob = branchBlobMap.get(fileName);
-            Blob splitBlob = splitBlobMap.get(fileName);
+            String headBlobId = headBlobIds.get(fileName);
+            String branchBlobId = branchBlobIds.get(fileName);
+            String splitBlobId = splitBlobIds.get(fileName);
 
-            boolean headModified = isModified(headBlob, splitBlob);
-            boolean branchModified = isModified(branchBlob, splitBlob);
-            boolean headBranchDiff = isModified(branchBlob, headBlob);
+            boolean headModified = !Objects.equals(headBlobId, splitBlobId);
+            boolean branchModified = !Objects.equals(branchBlobId, splitBlobId);
+            boolean headBranchDiff = !Objects.equals(branchBlobId, headBlobId);
 
-            if (branchBlob != null && branchModified && !headModified) {
-                CheckoutCommand.checkoutCommitFile(repository, branchCommit.getId(), fileName);
-                AddCommand.add(repository, fileName);
+            if (branchBlobId != null && branchModified && !headModified) {
+                blobManager.getBlob(branchBlobId, fileName).writeTo(new File(fileName));
+                additions.add(new IndexEntry(fileName, branchBlobId, IndexEntry.State.ADDED, null));
             }
 
-            if (branchBlob == null && branchModified && !headModified) {
+            if (branchBlobId == null && branchModified && !headModified) {
                 RmCommand.rm(repository, fileName);
             }
 
             if (headModified && branchModified && headBranchDiff) {
-                isConflicted = true;
-                String headContent = "";
-                if (headBlob != null)
-                    headContent = headBlob.getContent();
-                String branchContent = "";
-                if (branchBlob != null)
-                    branchContent = branchBlob.getContent();
-                String mergedContent = String.format("<<<<<<< HEAD%n%s=======%n%s>>>>>>>%n", headContent, branchContent);
                 File file = new File(fileName);
-                Utils.writeContents(file, mergedContent);
-                AddCommand.add(repository, fileName);
+                try (InputStream headContent = openContent(blobManager, headBlobId);
+                     InputStream branchContent = openContent(blobManager, branchBlobId)) {
+                    Utils.writeContents(file, String.format("<<<<<<< HEAD%n"), headContent,
+                            String.format("=======%n"), branchContent, String.format(">>>>>>>%n"));
+                } catch (IOException excp) {
+                    throw new GitLikeException("Unable to read content of " + fileName);
+                }
+                conflictedFiles.add(fileName);
             }
         }
 
+        stageManager.update(additions);
+        if (!conflictedFiles.isEmpty())
+            AddCommand.add(repository, conflictedFiles);
+
         String mergeMessage = String.format("Merged %s into %s.", branchName, head.getName());
         CommitCommand.commit(repository, mergeMessage, branch.getCommitId());
 
-        if (isConflicted)
+        if (!conflictedFiles.isEmpty())
             return "Encountered a merge conflict.";
         return null;
     }
 
-    static Map<String, Blob> getNameToBlobMap(Repository repository, Commit commit) {
-        Map<String, Blob> result = new HashMap<>();
-        Set<Blob> blobs = repository.getBlobManager().getCommitBlobs(commit);
-        for (Blob blob: blobs) {
-            result.put(blob.getFileName(), blob);
-        }
-        return result;
-    }
-
+    /**
+     * Get the merge base of two commits.
+     * After criss-cross merges there are several merge bases, the most recent one is used.
+     */
     static Commit getSplitPoint(Repository repository, Commit headCommit, Commit branchCommit) {
         CommitManager commitManager = repository.getCommitManager();
-
-        /* execute bfs to get all ancestors of the branch */
-        Set<Commit> currentCommitHistory = new HashSet<>();
-        Queue<Commit> toVisit = new ArrayDeque<>();
-        toVisit.add(branchCommit);
-        while (!toVisit.isEmpty()) {
-            Commit commit = toVisit.poll();
-            currentCommitHistory.add(commit);
-
-            String parentId = commit.getParentId();
-            if (parentId != null)
-                toVisit.add(commitManager.getCommit(parentId));
-
-            String mergedParentId = commit.getMergedParentId();
-            if (mergedParentId != null)
-                toVisit.add(commitManager.getCommit(mergedParentId));
-        }
-
-        /*
-         * execute bfs to traverse the ancestors of the first commit and
-         * in case of coincidence with the ancestors of the first commit, return the split point
-         */
-        toVisit.add(headCommit);
-        while (!toVisit.isEmpty()) {
-            Commit commit = toVisit.poll();
-            if (currentCommitHistory.contains(commit))
-                return commit;
-
-            String parentId = commit.getParentId();
-            if (parentId != null)
-                toVisit.add(commitManager.getCommit(parentId));
-
-            String mergedParentId = commit.getMergedParentId();
-            if (mergedParentId != null)
-                toVisit.add(commitManager.getCommit(mergedParentId));
-        }
-
-        return null;
+        int headPosition = commitManager.getGraphPosition(headCommit.getId());
+        int branchPosition = commitManager.getGraphPosition(branchCommit.getId());
+
+        CommitGraph graph = commitManager.getGraph();
+        int splitPosition = MergeBase.find(graph, headPosition, branchPosition);
+        if (splitPosition == CommitGraph.NONE)
+            return null;
+        return commitManager.getCommit(graph.getId(splitPosition));
     }
 
-    static boolean isModified(Blob blob, Blob anotherBlob) {
-        boolean blobExist = blob != null;
-        boolean anotherBlobExist = anotherBlob != null;
-        return blobExist && anotherBlobExist && !blob.equals(anotherBlob)
-                || blobExist && !anotherBlobExist
-                || !blobExist && anotherBlobExist;
+    /**
+     * Open blob content, a missing blob has empty content
+     */
+    static InputStream openContent(BlobManager blobManager, String blobId) throws IOException {
+        if (blobId == null)
+            return InputStream.nullInputStream();
+        return blobManager.getBlob(blobId).getContent().open();
     }
 
 }
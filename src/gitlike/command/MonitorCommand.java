@@ -0,0 +1,33 @@
+package gitlike.command;
+
+import gitlike.GitLikeException;
+import gitlike.Repository;
+
+/**
+ * Command that watches the working folder and records the paths of changed files until it is stopped.
+ * While it runs, status and adding all files read only the changed paths instead of walking the working folder.
+ * It is usually started in the background.
+ * usage: monitor
+ */
+public class MonitorCommand implements Command {
+
+    @Override
+    public String execute(String... args) {
+        final int NUM_ARGS = 1;
+        if (args.length != NUM_ARGS)
+            throw new GitLikeException("Incorrect operands.");
+
+        Repository repository = new Repository();
+
+        monitor(repository);
+
+        return null;
+    }
+
+    static void monitor(Repository repository) {
+        if (!repository.isInitialized())
+            throw new GitLikeException("Not in an initialized GitLike directory.");
+
+        repository.getFileMonitor().run();
+    }
+}
@@ -0,0 +1,51 @@
+package gitlike.command;
+
+import gitlike.GitLikeException;
+import gitlike.Repository;
+
+/**
+ * Command to move commits and blobs stored as separate files into the pack,
+ * or with --loose only to move them into subfolders by id without rewriting them
+ * usage:
+ *  repack
+ *  repack --loose
+ */
+public class RepackCommand implements Command {
+
+    @Override
+    public String execute(String... args) {
+        Repository repository = new Repository();
+
+        switch (args.length) {
+            case 1:
+                repack(repository);
+                break;
+            case 2:
+                if (!args[1].equals("--loose"))
+                    throw new GitLikeException("Incorrect operands.");
+                shardLooseObjects(repository);
+                break;
+            default:
+                throw new GitLikeException("Incorrect operands.");
+        }
+
+        return null;
+    }
+
+    static void repack(Repository repository) {
+        if (!repository.isInitialized())
+            throw new GitLikeException("Not in an initialized GitLike directory.");
+
+        repository.getCommitManager().migrateLooseObjects();
+        repository.getBlobManager().migrateLooseObjects();
+    }
+
+    static void shardLooseObjects(Repository repository) {
+        if (!repository.isInitialized())
+            throw new GitLikeException("Not in an initialized GitLike directory.");
+
+        repository.getCommitManager().shardLooseObjects();
+        repository.getBlobManager().shardLooseObjects();
+    }
+
+}
@@ -27,8 +27,10 @@ public class ResetCommand implements Command {
     static void reset(Repository repository, String commitId) {
         CheckoutCommand.checkoutCommit(repository, commitId);
 
+        /* the branch keeps the full id, a short id could become ambiguous later */
+        String fullCommitId = repository.getCommitManager().resolveId(commitId);
         Branch branch = repository.getCurrentBranch();
-        repository.getBranchManager().saveBranch(new Branch(branch.getName(), commitId));
+        repository.getBranchManager().saveBranch(new Branch(branch.getName(), fullCommitId));
     }
 
 }
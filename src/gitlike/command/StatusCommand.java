@@ -2,12 +2,14 @@ package gitlike.command;
 
 import gitlike.GitLikeException;
 import gitlike.Repository;
+import gitlike.manager.WorkingTreeStatus;
 import gitlike.object.Branch;
 
 import java.util.List;
+import java.util.Map;
 
 /**
- * Get information about branches and stage area
+ * Get information about branches, stage area and working files
  * usage: status
  */
 public class StatusCommand implements Command {
@@ -49,9 +51,19 @@ public class StatusCommand implements Command {
             resultBuilder.append(String.format("%s%n", fileName));
         }
 
+        WorkingTreeStatus workingTreeStatus = WorkingTreeStatus.scan(repository.getCurrentCommit(),
+                repository.getStageManager(), repository.getBlobManager(), repository.getWorkingTree(),
+                repository.getFileMonitor());
+
         resultBuilder.append(String.format("%n=== Modifications Not Staged For Commit ===%n"));
+        for (Map.Entry<String, String> change: workingTreeStatus.getUnstagedChanges().entrySet()) {
+            resultBuilder.append(String.format("%s (%s)%n", change.getKey(), change.getValue()));
+        }
 
         resultBuilder.append(String.format("%n=== Untracked Files ===%n"));
+        for (String fileName: workingTreeStatus.getUntrackedFiles()) {
+            resultBuilder.append(String.format("%s%n", fileName));
+        }
 
         return resultBuilder.toString();
     }
@@ -1,53 +1,249 @@
 package gitlike.manager;
 
+import gitlike.GitLikeException;
 import gitlike.Initializable;
-import gitlike.object.Commit;
+import gitlike.Utils;
+import gitlike.codec.BlobCodec;
+import gitlike.codec.ChunkCodec;
+import gitlike.codec.ChunkedContent;
+import gitlike.codec.Chunker;
+import gitlike.codec.CompressedCodec;
+import gitlike.codec.Delta;
+import gitlike.codec.DeltaContent;
+import gitlike.codec.ObjectCodec;
+import gitlike.object.ByteContent;
 import gitlike.object.Blob;
+import gitlike.object.Content;
+import gitlike.object.FileContent;
 
 import java.io.File;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class that provides access to blobs and manages blobs at the file level.
  */
 public class BlobManager implements Initializable {
     private static final String BLOB_FOLDER_NAME = "blobs";
+    private static final String CHUNK_FOLDER_NAME = "chunks";
 
-    private final ObjectManager<Blob> objectManager;
+    /**
+     * Deltas are built in memory, so larger blobs are always stored in full
+     */
+    private static final long MAX_DELTA_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Size of the blob cache in bytes, and estimated sizes of a blob without content and of a chunk entry.
+     * Blob content is read when it is opened, only content that is already in memory counts.
+     */
+    private static final long CACHE_SIZE = 16 * 1024 * 1024;
+    private static final long BLOB_WEIGHT = 256;
+    private static final long CHUNK_WEIGHT = 128;
+
+    private final ObjectCache<Blob> cache = new ObjectCache<>(CACHE_SIZE, BlobManager::weigh);
+    private final PackedObjectManager<Blob> objectManager;
+    private final PackedObjectManager<Content> chunkManager;
+    private final ConfigManager configManager;
 
     /**
      * Create blob manager
      * @param repositoryFolder repository folder
+     * @param configManager settings that choose how new blobs are stored
      */
-    public BlobManager(File repositoryFolder) {
-        objectManager = new ObjectManager<>(new File(repositoryFolder, BLOB_FOLDER_NAME));
+    public BlobManager(File repositoryFolder, ConfigManager configManager) {
+        this.configManager = configManager;
+        File objectFolder = new File(repositoryFolder, BLOB_FOLDER_NAME);
+        ObjectCodec<Blob> codec = new CompressedCodec<>(new BlobCodec(this::getBaseContent, this::getChunkContent),
+                configManager::getCompression);
+        objectManager = new PackedObjectManager<>(objectFolder, codec, cache);
+        /* The chunk pack is created with the first chunk, so repositories without chunks have no chunk folder */
+        chunkManager = new PackedObjectManager<>(new File(repositoryFolder, CHUNK_FOLDER_NAME),
+                new CompressedCodec<>(new ChunkCodec(), configManager::getCompression));
     }
 
     /**
      * Save blob to repository
      */
     public void saveBlob(Blob blob) {
-        objectManager.save(blob.getId(), blob);
+        saveBlob(blob, null);
+    }
+
+    /**
+     * Save blob to repository.
+     * Large blobs are split into chunks and only the chunks that are not stored yet are written,
+     * other blobs are stored as a delta against the base blob when it is smaller.
+     * The base is usually the previous version of the same file and can be null.
+     */
+    public void saveBlob(Blob blob, Blob base) {
+        if (objectManager.contains(blob.getId()))
+            return;
+
+        Blob stored = createChunked(blob);
+        if (stored == null)
+            stored = createDelta(blob, base);
+        objectManager.save(blob.getId(), stored != null ? stored : blob);
     }
 
     /**
      * Get blob from repository.
+     * Stored blobs have no file name, except blobs written by older versions.
      * Returns null if no blob was found.
      */
     public Blob getBlob(String id) {
-        return objectManager.get(id, Blob.class);
+        return objectManager.get(id);
+    }
+
+    /**
+     * Get blob from repository for the file with the given name.
+     * Returns null if no blob was found.
+     */
+    public Blob getBlob(String id, String fileName) {
+        Blob blob = getBlob(id);
+        if (blob == null)
+            return null;
+        return new Blob(id, fileName, blob.getContent());
+    }
+
+    /**
+     * Check if the repository contains a blob
+     */
+    public boolean containsBlob(String id) {
+        return objectManager.contains(id);
+    }
+
+    /**
+     * Get the file name stored in a blob written by older versions,
+     * which identified blobs by file name and content
+     */
+    public String getStoredFileName(String id) {
+        Blob blob = getBlob(id);
+        if (blob == null || blob.getFileName() == null)
+            throw new GitLikeException("Missing file name of blob " + id + ".");
+        return blob.getFileName();
+    }
+
+    /**
+     * Check if a blob written by older versions, whose id was computed from the file name and the content,
+     * has the content of a file
+     */
+    public boolean isOlderBlobOf(String id, File file) {
+        return isOlderBlobOf(id, new FileContent(file));
+    }
+
+    /**
+     * Check if a blob written by older versions has the content
+     */
+    public boolean isOlderBlobOf(String id, Content content) {
+        Blob blob = getBlob(id);
+        if (blob == null || blob.getFileName() == null)
+            return false;
+        try (InputStream stream = content.open()) {
+            return Utils.sha1(blob.getFileName(), stream).equals(id);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read content of " + blob.getFileName());
+        }
+    }
+
+    /**
+     * Move blobs stored as separate files into the pack.
+     * Returns the number of moved blobs.
+     */
+    public int migrateLooseObjects() {
+        return objectManager.migrateLooseObjects();
+    }
+
+    /**
+     * Build a blob that stores the content as a delta against the base.
+     * Returns null if the delta chain would be too long or the delta does not save enough space.
+     */
+    private Blob createDelta(Blob blob, Blob base) {
+        int maxDepth = configManager.getDeltaDepth();
+        if (base == null || maxDepth == 0)
+            return null;
+
+        Content baseContent = base.getContent();
+        int depth = 1;
+        if (baseContent instanceof DeltaContent)
+            depth = ((DeltaContent) baseContent).getDepth() + 1;
+        if (depth > maxDepth)
+            return null;
+
+        long size = blob.getContent().size();
+        if (size > MAX_DELTA_SIZE || baseContent.size() > MAX_DELTA_SIZE)
+            return null;
+
+        byte[] delta;
+        try (InputStream target = blob.getContent().open(); InputStream source = baseContent.open()) {
+            delta = Delta.create(source.readAllBytes(), target.readAllBytes());
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read content of " + blob.getFileName());
+        }
+        if (delta.length > size / 2)
+            return null;
+
+        DeltaContent content = new DeltaContent(base.getId(), depth, size, new ByteContent(delta),
+                this::getBaseContent);
+        return new Blob(blob.getId(), blob.getFileName(), content);
     }
 
     /**
-     * Get a set of all blobs for a given commit
+     * Split the content into content-defined chunks, save the new chunks
+     * and build a blob that stores the list of chunks.
+     * Returns null if the blob is smaller than the chunking threshold.
      */
-    public Set<Blob> getCommitBlobs(Commit commit) {
-        Set<Blob> blobs = new HashSet<>();
-        for (String blobId: commit.getBlobIds()) {
-            blobs.add(getBlob(blobId));
+    private Blob createChunked(Blob blob) {
+        int threshold = configManager.getChunkThreshold();
+        if (threshold == 0 || blob.getContent().size() < threshold)
+            return null;
+
+        List<String> chunkIds = new ArrayList<>();
+        List<Integer> chunkSizes = new ArrayList<>();
+        try (InputStream in = blob.getContent().open()) {
+            Chunker chunker = new Chunker(in);
+            byte[] chunk;
+            while ((chunk = chunker.next()) != null) {
+                String chunkId = Utils.sha1(chunk);
+                chunkManager.save(chunkId, new ByteContent(chunk));
+                chunkIds.add(chunkId);
+                chunkSizes.add(chunk.length);
+            }
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read content of " + blob.getFileName());
         }
-        return blobs;
+
+        ChunkedContent content = new ChunkedContent(chunkIds, chunkSizes, this::getChunkContent);
+        return new Blob(blob.getId(), blob.getFileName(), content);
+    }
+
+    private Content getChunkContent(String id) {
+        Content chunk = chunkManager.get(id);
+        if (chunk == null)
+            throw new GitLikeException("Missing chunk " + id + ".");
+        return chunk;
+    }
+
+    private Content getBaseContent(String id) {
+        Blob base = getBlob(id);
+        if (base == null)
+            throw new GitLikeException("Missing base blob " + id + ".");
+        return base.getContent();
+    }
+
+    /**
+     * Move blobs stored as separate files by older versions into subfolders by id.
+     * Returns the number of moved blobs.
+     */
+    public int shardLooseObjects() {
+        return objectManager.shardFlatObjects();
+    }
+
+    /**
+     * Get the cache of decoded blobs, which counts hits and misses
+     */
+    public ObjectCache<Blob> getCache() {
+        return cache;
     }
 
     public boolean isInitialized() {
@@ -57,4 +253,16 @@ public class BlobManager implements Initializable {
     public void initialize() {
         objectManager.initialize();
     }
+
+    /**
+     * Estimate the size of a decoded blob in memory
+     */
+    private static long weigh(Blob blob) {
+        Content content = blob.getContent();
+        if (content instanceof ByteContent)
+            return BLOB_WEIGHT + content.size();
+        if (content instanceof ChunkedContent)
+            return BLOB_WEIGHT + ((ChunkedContent) content).getChunkIds().size() * CHUNK_WEIGHT;
+        return BLOB_WEIGHT;
+    }
 }
@@ -2,25 +2,47 @@ package gitlike.manager;
 
 import gitlike.GitLikeException;
 import gitlike.Initializable;
+import gitlike.codec.BranchCodec;
+import gitlike.codec.ReachabilityCodec;
 import gitlike.object.Branch;
+import gitlike.object.CompressedBitmap;
+import gitlike.object.Reachability;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class that provides access to branches and manages branches at the file level.
+ * <p>
+ * For each branch the set of commits reachable from it is kept as a compressed bitmap over commit graph
+ * positions, so questions such as whether a commit is in a branch are answered without walking history.
  */
 public class BranchManager implements Initializable {
     private static final String BRANCH_FOLDER_NAME = "branches";
+    private static final String BITMAP_FOLDER_NAME = "bitmaps";
 
     private final ObjectManager<Branch> objectManager;
+    private final ObjectManager<Reachability> bitmapManager;
+    private final CommitManager commitManager;
+
+    /**
+     * Reachable commits by branch name that were already loaded or computed
+     */
+    private final Map<String, Reachability> reachabilities = new HashMap<>();
 
     /**
      * Create branch manager
      * @param repositoryFolder repository folder
+     * @param commitManager commit manager, gives the commit graph
      */
-    public BranchManager(File repositoryFolder) {
-        objectManager = new ObjectManager<>(new File(repositoryFolder, BRANCH_FOLDER_NAME));
+    public BranchManager(File repositoryFolder, CommitManager commitManager) {
+        objectManager = new ObjectManager<>(new File(repositoryFolder, BRANCH_FOLDER_NAME), new BranchCodec());
+        bitmapManager = new ObjectManager<>(new File(repositoryFolder, BITMAP_FOLDER_NAME), new ReachabilityCodec());
+        this.commitManager = commitManager;
     }
 
     /**
@@ -39,6 +61,8 @@ public class BranchManager implements Initializable {
     public void deleteBranch(String branchName) {
         if (!objectManager.delete(branchName))
             throw new GitLikeException("A branch with that name does not exist.");
+        reachabilities.remove(branchName);
+        bitmapManager.delete(branchName);
     }
 
     /**
@@ -52,14 +76,71 @@ public class BranchManager implements Initializable {
      * Get a branch with the given name, return null is no branch exist
      */
     public Branch getBranch(String branchName) {
-        return objectManager.get(branchName, Branch.class);
+        return objectManager.get(branchName);
     }
 
     /**
      * Get list of all existing branches
      */
     public List<Branch> getAllBranches() {
-        return objectManager.getAll(Branch.class);
+        return objectManager.getAll();
+    }
+
+    /**
+     * Get graph positions of the commits reachable from a branch, return null if no branch exist
+     * <p>
+     * The set is stored for each branch and brought up to date when the branch has moved.
+     * When the branch moved forward, only the new commits are walked.
+     */
+    public CompressedBitmap getReachableCommits(String branchName) {
+        Branch branch = getBranch(branchName);
+        if (branch == null)
+            return null;
+
+        Reachability reachability = reachabilities.get(branchName);
+        if (reachability == null)
+            reachability = bitmapManager.get(branchName);
+        if (reachability == null || !reachability.getCommitId().equals(branch.getCommitId())) {
+            reachability = new Reachability(branch.getCommitId(),
+                    computeReachableCommits(branch.getCommitId(), reachability));
+            saveReachability(branchName, reachability);
+        }
+        reachabilities.put(branchName, reachability);
+        return reachability.getCommits();
+    }
+
+    /**
+     * Check if a commit is the head of a branch or one of its ancestors
+     */
+    public boolean isReachable(String commitId, String branchName) {
+        int position = commitManager.getGraphPosition(commitId);
+        if (position == CommitGraph.NONE)
+            return false;
+        CompressedBitmap commits = getReachableCommits(branchName);
+        return commits != null && commits.contains(position);
+    }
+
+    /**
+     * Get graph positions of the commits reachable from every branch
+     */
+    public CompressedBitmap getCommitsReachableFromAllBranches() {
+        CompressedBitmap result = null;
+        for (Branch branch: getAllBranches()) {
+            CompressedBitmap commits = getReachableCommits(branch.getName());
+            result = result == null ? commits : result.and(commits);
+        }
+        return result == null ? new CompressedBitmap() : result;
+    }
+
+    /**
+     * Get graph positions of the commits reachable from at least one branch
+     */
+    public CompressedBitmap getCommitsReachableFromAnyBranch() {
+        CompressedBitmap result = new CompressedBitmap();
+        for (Branch branch: getAllBranches()) {
+            result = result.or(getReachableCommits(branch.getName()));
+        }
+        return result;
     }
 
     public boolean isInitialized() {
@@ -69,4 +150,61 @@ public class BranchManager implements Initializable {
     public void initialize() {
         objectManager.initialize();
     }
+
+    /**
+     * Get the commits reachable from a commit.
+     * If the commit of the previous set is an ancestor, only the commits that are not in it are walked.
+     */
+    private CompressedBitmap computeReachableCommits(String commitId, Reachability previous) {
+        CommitGraph graph = commitManager.getGraph();
+        int position = commitManager.getGraphPosition(commitId);
+        if (previous != null) {
+            int previousPosition = graph.getPosition(previous.getCommitId());
+            if (previousPosition != CommitGraph.NONE) {
+                CompressedBitmap added = new CompressedBitmap();
+                if (walk(graph, position, previous.getCommits(), added, previousPosition))
+                    return previous.getCommits().or(added);
+            }
+        }
+
+        CompressedBitmap result = new CompressedBitmap();
+        walk(graph, position, new CompressedBitmap(), result, CommitGraph.NONE);
+        return result;
+    }
+
+    /**
+     * Add the commits reachable from a position that are not known to the result,
+     * the walk stops at known commits because their ancestors are known too.
+     * Returns whether the walk stopped at the given commit.
+     */
+    private static boolean walk(CommitGraph graph, int position, CompressedBitmap known, CompressedBitmap result,
+                                int stopPosition) {
+        boolean isStopped = false;
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        toVisit.push(position);
+        while (!toVisit.isEmpty()) {
+            int current = toVisit.pop();
+            if (known.contains(current)) {
+                isStopped |= current == stopPosition;
+                continue;
+            }
+            if (result.contains(current))
+                continue;
+
+            result.add(current);
+            int parent = graph.getParent(current);
+            if (parent != CommitGraph.NONE)
+                toVisit.push(parent);
+            int mergedParent = graph.getMergedParent(current);
+            if (mergedParent != CommitGraph.NONE)
+                toVisit.push(mergedParent);
+        }
+        return isStopped;
+    }
+
+    private void saveReachability(String branchName, Reachability reachability) {
+        if (!bitmapManager.isInitialized())
+            bitmapManager.initialize();
+        bitmapManager.save(branchName, reachability);
+    }
 }
@@ -0,0 +1,296 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact memory-mapped graph of commits, so history can be walked without reading commit objects.
+ * <p>
+ * Graph file: magic "GLCG", version, then one fixed-size record per commit in the order the commits
+ * were added: id (20 bytes), parent position, merged parent position (-1 if none), generation, timestamp.
+ * A commit is added after its parents, so parents always have smaller positions.
+ * The generation of a commit without parents is 1, otherwise it is one more than the largest
+ * generation of its parents, so a commit never has a smaller generation than its descendants.
+ * <p>
+ * Lookup file: magic "GLCL", version, number of records it covers, then their positions sorted by id.
+ * Records added after the lookup file was written are kept in memory
+ * and the lookup file is rewritten when there are many of them.
+ */
+public class CommitGraph {
+    /**
+     * Position of a missing commit
+     */
+    public static final int NONE = -1;
+
+    private static final String GRAPH_FILE_NAME = "commits.graph";
+    private static final String LOOKUP_FILE_NAME = "commits.lookup";
+
+    private static final int GRAPH_MAGIC = 0x474c4347;
+    private static final int LOOKUP_MAGIC = 0x474c434c;
+    private static final int VERSION = 1;
+
+    private static final int ID_LENGTH = 20;
+    private static final int HEADER_LENGTH = 8;
+    private static final int LOOKUP_HEADER_LENGTH = 12;
+    private static final int RECORD_LENGTH = ID_LENGTH + 4 + 4 + 4 + 8;
+
+    /**
+     * Number of records not covered by the lookup file after which it is rewritten
+     */
+    private static final int RELOOKUP_THRESHOLD = 512;
+
+    private final File graphFolder;
+    private final File graphFile;
+    private final File lookupFile;
+
+    private boolean isLoaded;
+    private MappedByteBuffer graph;
+    private int size;
+    private IntBuffer lookup;
+    private int lookupSize;
+
+    /**
+     * Positions of the records that are not covered by the lookup file
+     */
+    private final Map<String, Integer> unlookedUp = new HashMap<>();
+
+    /**
+     * Create commit graph
+     * @param graphFolder the folder that contains the graph files
+     */
+    public CommitGraph(File graphFolder) {
+        this.graphFolder = graphFolder;
+        graphFile = new File(graphFolder, GRAPH_FILE_NAME);
+        lookupFile = new File(graphFolder, LOOKUP_FILE_NAME);
+    }
+
+    /**
+     * Get the number of commits in the graph
+     */
+    public int size() {
+        load();
+        return size;
+    }
+
+    /**
+     * Get the position of a commit, return {@link #NONE} if the commit is not in the graph
+     */
+    public int getPosition(String id) {
+        if (!PackFile.isObjectId(id))
+            return NONE;
+        load();
+
+        byte[] key = Utils.hexToBytes(id);
+        int low = 0;
+        int high = lookupSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = lookup.get(LOOKUP_HEADER_LENGTH / 4 + middle);
+            int comparison = compareId(position, key);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return position;
+        }
+
+        return unlookedUp.getOrDefault(id, NONE);
+    }
+
+    public String getId(int position) {
+        StringBuilder result = new StringBuilder(ID_LENGTH * 2);
+        int offset = recordOffset(position);
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int value = graph.get(offset + i);
+            result.append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Get the position of the parent, return {@link #NONE} if the commit has no parent
+     */
+    public int getParent(int position) {
+        return graph.getInt(recordOffset(position) + ID_LENGTH);
+    }
+
+    /**
+     * Get the position of the merged parent, return {@link #NONE} if the commit is not a merge
+     */
+    public int getMergedParent(int position) {
+        return graph.getInt(recordOffset(position) + ID_LENGTH + 4);
+    }
+
+    public int getGeneration(int position) {
+        return graph.getInt(recordOffset(position) + ID_LENGTH + 8);
+    }
+
+    public long getTimestamp(int position) {
+        return graph.getLong(recordOffset(position) + ID_LENGTH + 12);
+    }
+
+    /**
+     * Add a commit whose parents are already in the graph
+     * @param id commit id
+     * @param parent position of the parent or {@link #NONE}
+     * @param mergedParent position of the merged parent or {@link #NONE}
+     * @param timestamp commit timestamp
+     * @return position of the added commit
+     */
+    public int add(String id, int parent, int mergedParent, long timestamp) {
+        load();
+        int generation = 1;
+        if (parent != NONE)
+            generation = Math.max(generation, getGeneration(parent) + 1);
+        if (mergedParent != NONE)
+            generation = Math.max(generation, getGeneration(mergedParent) + 1);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        record.put(Utils.hexToBytes(id)).putInt(parent).putInt(mergedParent).putInt(generation).putLong(timestamp);
+        record.flip();
+
+        try {
+            if (!graphFolder.exists() && !graphFolder.mkdirs())
+                throw new GitLikeException("Unable to create folder " + graphFolder.getAbsolutePath());
+            try (FileChannel channel = FileChannel.open(graphFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() == 0) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                    header.putInt(GRAPH_MAGIC).putInt(VERSION).flip();
+                    writeFully(channel, header, 0);
+                }
+                long offset = HEADER_LENGTH + (long) size * RECORD_LENGTH;
+                writeFully(channel, record, offset);
+                size++;
+                graph = channel.map(FileChannel.MapMode.READ_ONLY, 0, offset + RECORD_LENGTH);
+            }
+            unlookedUp.put(id, size - 1);
+            if (size - lookupSize >= RELOOKUP_THRESHOLD)
+                writeLookup();
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to write file " + graphFile.getAbsolutePath());
+        }
+        return size - 1;
+    }
+
+    /**
+     * Map the graph and lookup files, a record that was not written completely is dropped
+     */
+    private void load() {
+        if (isLoaded)
+            return;
+        isLoaded = true;
+        if (!graphFile.exists())
+            return;
+
+        try (FileChannel channel = FileChannel.open(graphFile.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_LENGTH)
+                throw new GitLikeException("Unsupported commit graph " + graphFile.getAbsolutePath());
+            size = (int) ((channel.size() - HEADER_LENGTH) / RECORD_LENGTH);
+            long length = HEADER_LENGTH + (long) size * RECORD_LENGTH;
+            if (channel.size() > length)
+                channel.truncate(length);
+            graph = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (graph.getInt(0) != GRAPH_MAGIC || graph.getInt(4) != VERSION)
+                throw new GitLikeException("Unsupported commit graph " + graphFile.getAbsolutePath());
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read file " + graphFile.getAbsolutePath());
+        }
+
+        if (lookupFile.exists()) {
+            try (FileChannel channel = FileChannel.open(lookupFile.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.capacity() >= LOOKUP_HEADER_LENGTH && buffer.getInt(0) == LOOKUP_MAGIC
+                        && buffer.getInt(4) == VERSION && buffer.getInt(8) <= size
+                        && buffer.capacity() == LOOKUP_HEADER_LENGTH + buffer.getInt(8) * 4) {
+                    lookup = buffer.asIntBuffer();
+                    lookupSize = buffer.getInt(8);
+                }
+            } catch (IOException excp) {
+                throw new GitLikeException("Unable to read file " + lookupFile.getAbsolutePath());
+            }
+        }
+
+        for (int position = lookupSize; position < size; position++) {
+            unlookedUp.put(getId(position), position);
+        }
+    }
+
+    /**
+     * Write the positions of all records sorted by id
+     */
+    private void writeLookup() throws IOException {
+        Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        Arrays.sort(positions, this::compareIds);
+
+        ByteBuffer buffer = ByteBuffer.allocate(LOOKUP_HEADER_LENGTH + size * 4);
+        buffer.putInt(LOOKUP_MAGIC).putInt(VERSION).putInt(size);
+        for (int position: positions) {
+            buffer.putInt(position);
+        }
+        buffer.flip();
+
+        File tempFile = new File(graphFolder, LOOKUP_FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, buffer, 0);
+        }
+        Files.move(tempFile.toPath(), lookupFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        try (FileChannel channel = FileChannel.open(lookupFile.toPath(), StandardOpenOption.READ)) {
+            lookup = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+        }
+        lookupSize = size;
+        unlookedUp.clear();
+    }
+
+    private int compareId(int position, byte[] key) {
+        int offset = recordOffset(position);
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int comparison = Integer.compare(graph.get(offset + i) & 0xff, key[i] & 0xff);
+            if (comparison != 0)
+                return comparison;
+        }
+        return 0;
+    }
+
+    private int compareIds(int position, int anotherPosition) {
+        int offset = recordOffset(position);
+        int anotherOffset = recordOffset(anotherPosition);
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int comparison = Integer.compare(graph.get(offset + i) & 0xff, graph.get(anotherOffset + i) & 0xff);
+            if (comparison != 0)
+                return comparison;
+        }
+        return 0;
+    }
+
+    private static int recordOffset(int position) {
+        return HEADER_LENGTH + position * RECORD_LENGTH;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package gitlike.manager;
 
+import gitlike.GitLikeException;
 import gitlike.Initializable;
+import gitlike.codec.CommitCodec;
+import gitlike.codec.CompressedCodec;
+import gitlike.codec.ObjectCodec;
 import gitlike.Utils;
 import gitlike.object.Commit;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 /**
@@ -12,61 +19,228 @@ import java.util.List;
  */
 public class CommitManager implements Initializable {
     private static final String COMMIT_FOLDER_NAME = "commits";
+    private static final String GRAPH_FOLDER_NAME = "graph";
+    private static final String MESSAGE_INDEX_FOLDER_NAME = "messages";
 
-    private final ObjectManager<Commit> objectManager;
+    /**
+     * Number of matching ids reported for an ambiguous short id
+     */
+    private static final int MAX_AMBIGUOUS_IDS = 5;
+
+    /**
+     * Size of the commit cache in bytes, and estimated sizes of a commit without files and of a file entry
+     */
+    private static final long CACHE_SIZE = 32 * 1024 * 1024;
+    private static final long COMMIT_WEIGHT = 512;
+    private static final long FILE_WEIGHT = 256;
+
+    private final ObjectCache<Commit> cache = new ObjectCache<>(CACHE_SIZE, CommitManager::weigh);
+    private final PackedObjectManager<Commit> objectManager;
+    private final CommitGraph graph;
+    private final MessageIndex messageIndex;
 
     /**
      * Create commit manager
      * @param repositoryFolder repository folder
+     * @param configManager settings that choose the compression of new commits
+     * @param blobManager gives the file names of blobs in commits written by older versions
+     * @param treeManager gives the files of commits, which are read when they are first needed
      */
-    public CommitManager(File repositoryFolder) {
-        objectManager = new ObjectManager<>(new File(repositoryFolder, COMMIT_FOLDER_NAME));
+    public CommitManager(File repositoryFolder, ConfigManager configManager, BlobManager blobManager,
+                         TreeManager treeManager) {
+        File objectFolder = new File(repositoryFolder, COMMIT_FOLDER_NAME);
+        ObjectCodec<Commit> codec = new CompressedCodec<>(
+                new CommitCodec(blobManager::getStoredFileName, treeManager),
+                configManager::getCompression);
+        objectManager = new PackedObjectManager<>(objectFolder, codec, cache);
+        graph = new CommitGraph(new File(objectFolder, GRAPH_FOLDER_NAME));
+        messageIndex = new MessageIndex(new File(objectFolder, MESSAGE_INDEX_FOLDER_NAME), graph,
+                position -> objectManager.getUncached(graph.getId(position)).getLogMessage());
     }
 
     /**
-     * Save commit
+     * Save commit and add it to the commit graph and the message index
      */
     public void saveCommit(Commit commit) {
         objectManager.save(commit.getId(), commit);
+        getGraphPosition(commit.getId());
+        messageIndex.update();
+    }
+
+    /**
+     * Get the commit graph, which gives parents, generation numbers and timestamps of commits
+     * without reading the commits.
+     * Positions of commits should be obtained with {@link #getGraphPosition(String)}.
+     */
+    public CommitGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the position of a commit in the commit graph, return {@link CommitGraph#NONE} if no commit exist
+     * Supports short id
+     * <p>
+     * Commits written by older versions are not in the graph,
+     * such a commit is added with all its missing ancestors when it is first needed.
+     *
+     * @throws GitLikeException if several commits start with the short id
+     */
+    public int getGraphPosition(String id) {
+        String fullId = resolveId(id);
+        if (fullId == null)
+            return CommitGraph.NONE;
+
+        int position = graph.getPosition(fullId);
+        if (position != CommitGraph.NONE)
+            return position;
+
+        /* parents are added before their children */
+        Deque<String> toAdd = new ArrayDeque<>();
+        toAdd.push(fullId);
+        while (!toAdd.isEmpty()) {
+            String commitId = toAdd.peek();
+            if (graph.getPosition(commitId) != CommitGraph.NONE) {
+                toAdd.pop();
+                continue;
+            }
+
+            Commit commit = objectManager.get(commitId);
+            if (commit == null)
+                throw new GitLikeException("Missing commit " + commitId + ".");
+            int parent = getParentPosition(commit.getParentId(), toAdd);
+            int mergedParent = getParentPosition(commit.getMergedParentId(), toAdd);
+            if (toAdd.peek().equals(commitId)) {
+                toAdd.pop();
+                position = graph.add(commitId, parent, mergedParent, commit.getTimestamp());
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Walk the history of a commit lazily, starting with the commit itself
+     * Supports short id
+     * @param isFirstParentOnly whether merged parents are not followed
+     *
+     * @throws GitLikeException if no commit exist or several commits start with the short id
+     */
+    public CommitWalk walk(String id, boolean isFirstParentOnly) {
+        int position = getGraphPosition(id);
+        if (position == CommitGraph.NONE)
+            throw new GitLikeException("No commit with that id exists.");
+        return new CommitWalk(this, position, isFirstParentOnly);
     }
 
     /**
      * Get commit by id, return null if no commit exist
      * Supports short id
      * <p>
-     * Time complexity
-     * O(1) - for full id
-     * O(number of commits) - for short id
+     * Time complexity: O(log(number of commits)), commits are not read to resolve a short id
+     *
+     * @throws GitLikeException if several commits start with the short id
      */
     public Commit getCommit(String id) {
-        if (id.length() == Utils.UID_LENGTH) {
-            return objectManager.get(id, Commit.class);
-        }
+        String fullId = resolveId(id);
+        if (fullId == null)
+            return null;
+        return objectManager.get(fullId);
+    }
 
-        return getCommitByShortId(id);
+    /**
+     * Get the full id of a commit by its id or short id, return null if no commit exist
+     * <p>
+     * Time complexity: O(log(number of commits))
+     *
+     * @throws GitLikeException if several commits start with the short id
+     */
+    public String resolveId(String id) {
+        if (id.length() == Utils.UID_LENGTH)
+            return objectManager.contains(id) ? id : null;
+        if (id.isEmpty())
+            return null;
+
+        List<String> ids = objectManager.getFileNamesStartingWith(id, MAX_AMBIGUOUS_IDS + 1);
+        if (ids.isEmpty())
+            return null;
+        if (ids.size() > 1) {
+            String candidates = String.join(", ", ids.subList(0, Math.min(ids.size(), MAX_AMBIGUOUS_IDS)));
+            if (ids.size() > MAX_AMBIGUOUS_IDS)
+                candidates += ", ...";
+            throw new GitLikeException("Commit id " + id + " is ambiguous: " + candidates);
+        }
+        return ids.get(0);
     }
 
     /**
      * Get a list of all existing commits
      */
     public List<Commit> getAllCommits() {
-        return objectManager.getAll(Commit.class);
+        return objectManager.getAll();
+    }
+
+    /**
+     * Get all commits, the most recent first, reading them in parallel.
+     * Only a fixed number of commits is read ahead of the consumer, the cache is not used.
+     * The returned iterator should be closed.
+     */
+    public TimestampOrderedCommits getAllCommitsByTimestamp() {
+        addOlderCommitsToGraph();
+        return new TimestampOrderedCommits(graph, position -> objectManager.getUncached(graph.getId(position)),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Get ids of commits with the log message, in the order they were added to the repository
+     * <p>
+     * Time complexity: O(1), only commits whose message has the same hash are read
+     */
+    public List<String> findByMessage(String message) {
+        addOlderCommitsToGraph();
+        return getIds(messageIndex.find(message));
+    }
+
+    /**
+     * Get ids of commits whose log message contains the text, in the order they were added to the repository
+     * Only commits whose message has all three-byte sequences of the text are read
+     */
+    public List<String> findByMessagePart(String text) {
+        addOlderCommitsToGraph();
+        return getIds(messageIndex.findContaining(text));
     }
 
     /**
      * Check if the repository contains a commit
      * Supports short id
      * <p>
-     * Time complexity:
-     * O(1) - for full id
-     * O(number of commits) - for short id
+     * Time complexity: O(log(number of commits))
+     *
+     * @throws GitLikeException if several commits start with the short id
      */
     public boolean containsCommit(String id) {
-        if (id.length() == Utils.UID_LENGTH) {
-            return objectManager.contains(id);
-        }
+        return resolveId(id) != null;
+    }
+
+    /**
+     * Move commits stored as separate files into the pack.
+     * Returns the number of moved commits.
+     */
+    public int migrateLooseObjects() {
+        return objectManager.migrateLooseObjects();
+    }
+
+    /**
+     * Move commits stored as separate files by older versions into subfolders by id.
+     * Returns the number of moved commits.
+     */
+    public int shardLooseObjects() {
+        return objectManager.shardFlatObjects();
+    }
 
-        return getCommitByShortId(id) != null;
+    /**
+     * Get the cache of decoded commits, which counts hits and misses
+     */
+    public ObjectCache<Commit> getCache() {
+        return cache;
     }
 
     public boolean isInitialized() {
@@ -78,16 +252,49 @@ public class CommitManager implements Initializable {
     }
 
     /**
-     * Get commit by short id.
-     * This is an expensive operation!
-     * Time complexity: O(number of commits)
+     * Get the position of a parent in the commit graph,
+     * if the parent is not in the graph yet it is scheduled to be added
+     */
+    private int getParentPosition(String parentId, Deque<String> toAdd) {
+        if (parentId == null)
+            return CommitGraph.NONE;
+        int position = graph.getPosition(parentId);
+        if (position == CommitGraph.NONE)
+            toAdd.push(parentId);
+        return position;
+    }
+
+    /**
+     * Add commits written by older versions, which are not in the commit graph, to the graph
+     */
+    private void addOlderCommitsToGraph() {
+        if (graph.size() == objectManager.size())
+            return;
+        for (String id: objectManager.getAllFileNames()) {
+            if (graph.getPosition(id) == CommitGraph.NONE)
+                getGraphPosition(id);
+        }
+    }
+
+    private List<String> getIds(List<Integer> positions) {
+        List<String> ids = new ArrayList<>(positions.size());
+        for (int position: positions) {
+            ids.add(graph.getId(position));
+        }
+        return ids;
+    }
+
+    /**
+     * Estimate the size of a decoded commit in memory.
+     * Commits with a tree do not keep their files, they are cached as trees.
      */
-    private Commit getCommitByShortId(String id) {
-        for (Commit commit: getAllCommits()) {
-            String shortId = commit.getId().substring(0, id.length());
-            if (shortId.equals(id))
-                return commit;
+    private static long weigh(Commit commit) {
+        long weight = COMMIT_WEIGHT + commit.getLogMessage().length() * 2L;
+        if (commit.getTreeId() != null)
+            return weight;
+        for (String fileName: commit.getFileNames()) {
+            weight += FILE_WEIGHT + fileName.length() * 2L;
         }
-        return null;
+        return weight;
     }
 }
@@ -0,0 +1,79 @@
+package gitlike.manager;
+
+import gitlike.object.Commit;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazy walk over the history of a commit using the commit graph.
+ * A commit is read only when it is returned, so the first commits are available at once
+ * and skipped commits are never read.
+ * <p>
+ * When all parents are followed, every ancestor is returned once, the most recent first by timestamp.
+ * Commits with the same timestamp are returned in reverse order of addition to the graph,
+ * so children still come before their parents.
+ */
+public class CommitWalk implements Iterator<Commit> {
+    private final CommitManager commitManager;
+    private final CommitGraph graph;
+    private final boolean isFirstParentOnly;
+    private final PriorityQueue<Integer> queue;
+    private final BitSet queued = new BitSet();
+
+    CommitWalk(CommitManager commitManager, int position, boolean isFirstParentOnly) {
+        this.commitManager = commitManager;
+        this.graph = commitManager.getGraph();
+        this.isFirstParentOnly = isFirstParentOnly;
+        queue = new PriorityQueue<>((first, second) -> {
+            int comparison = Long.compare(graph.getTimestamp(second), graph.getTimestamp(first));
+            return comparison != 0 ? comparison : Integer.compare(second, first);
+        });
+        enqueue(position);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !queue.isEmpty();
+    }
+
+    @Override
+    public Commit next() {
+        if (queue.isEmpty())
+            throw new NoSuchElementException();
+        return commitManager.getCommit(graph.getId(advance()));
+    }
+
+    /**
+     * Skip commits without reading them
+     * @return the number of skipped commits, less than count if the history has ended
+     */
+    public int skip(int count) {
+        int skipped = 0;
+        while (skipped < count && !queue.isEmpty()) {
+            advance();
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Take the next position from the queue and queue its parents
+     */
+    private int advance() {
+        int position = queue.poll();
+        enqueue(graph.getParent(position));
+        if (!isFirstParentOnly)
+            enqueue(graph.getMergedParent(position));
+        return position;
+    }
+
+    private void enqueue(int position) {
+        if (position == CommitGraph.NONE || queued.get(position))
+            return;
+        queued.set(position);
+        queue.add(position);
+    }
+}
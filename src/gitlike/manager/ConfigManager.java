@@ -0,0 +1,180 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.Initializable;
+import gitlike.codec.Compression;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+
+/**
+ * Class that gives access to the repository settings stored in the config file.
+ * Repositories created by older versions have no config file, in that case default values are used.
+ */
+public class ConfigManager implements Initializable {
+    private static final String CONFIG_FILE_NAME = "config";
+
+    public static final String COMPRESSION_KEY = "compression";
+    public static final String DELTA_DEPTH_KEY = "delta.depth";
+    public static final String CHUNK_THRESHOLD_KEY = "chunk.threshold";
+    public static final String CHECKOUT_THREADS_KEY = "checkout.threads";
+
+    /**
+     * Settings of new repositories
+     */
+    private static final Compression INITIAL_COMPRESSION = Compression.DEFLATE;
+    private static final int INITIAL_DELTA_DEPTH = 10;
+    private static final int INITIAL_CHUNK_THRESHOLD = 8 * 1024 * 1024;
+    private static final int INITIAL_CHECKOUT_THREADS = 0;
+
+    /**
+     * Reading a blob applies every delta of its chain, so chains are kept short
+     */
+    private static final int MAX_DELTA_DEPTH = 50;
+
+    private final File configFile;
+    private Properties properties;
+
+    /**
+     * Create config manager
+     * @param repositoryFolder repository folder
+     */
+    public ConfigManager(File repositoryFolder) {
+        configFile = new File(repositoryFolder, CONFIG_FILE_NAME);
+    }
+
+    /**
+     * Get a setting, return null if the setting is not set
+     */
+    public String get(String key) {
+        return getProperties().getProperty(key);
+    }
+
+    /**
+     * Change a setting and save the config file
+     *
+     * @throws GitLikeException if the setting is unknown or the value is incorrect
+     */
+    public void set(String key, String value) {
+        validate(key, value);
+        getProperties().setProperty(key, value);
+        save();
+    }
+
+    /**
+     * Get the compression of new objects
+     */
+    public Compression getCompression() {
+        String value = get(COMPRESSION_KEY);
+        if (value == null)
+            return Compression.NONE;
+        return Compression.fromName(value);
+    }
+
+    /**
+     * Get the maximum length of a chain of blobs stored as deltas, 0 means that deltas are not used.
+     * A larger value in an edited config file is limited to the upper bound of the setting.
+     *
+     * @throws GitLikeException if the edited config file has no non-negative number for the setting
+     */
+    public int getDeltaDepth() {
+        return Math.min(getNumber(DELTA_DEPTH_KEY), MAX_DELTA_DEPTH);
+    }
+
+    /**
+     * Get the size in bytes from which blobs are split into chunks, 0 means that chunking is not used
+     *
+     * @throws GitLikeException if the edited config file has no non-negative number for the setting
+     */
+    public int getChunkThreshold() {
+        return getNumber(CHUNK_THRESHOLD_KEY);
+    }
+
+    /**
+     * Get the number of threads that write working files in checkout, a setting of 0 means one per processor
+     *
+     * @throws GitLikeException if the edited config file has no non-negative number for the setting
+     */
+    public int getCheckoutThreads() {
+        int threadCount = getNumber(CHECKOUT_THREADS_KEY);
+        return threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    public boolean isInitialized() {
+        return configFile.exists();
+    }
+
+    public void initialize() {
+        getProperties().setProperty(COMPRESSION_KEY, INITIAL_COMPRESSION.getName());
+        getProperties().setProperty(DELTA_DEPTH_KEY, Integer.toString(INITIAL_DELTA_DEPTH));
+        getProperties().setProperty(CHUNK_THRESHOLD_KEY, Integer.toString(INITIAL_CHUNK_THRESHOLD));
+        getProperties().setProperty(CHECKOUT_THREADS_KEY, Integer.toString(INITIAL_CHECKOUT_THREADS));
+        save();
+    }
+
+    private void validate(String key, String value) {
+        switch (key) {
+            case COMPRESSION_KEY:
+                Compression.fromName(value);
+                break;
+            case DELTA_DEPTH_KEY:
+                if (parseNonNegative(key, value) > MAX_DELTA_DEPTH)
+                    throw new GitLikeException("Setting " + key + " must be at most " + MAX_DELTA_DEPTH + ".");
+                break;
+            case CHUNK_THRESHOLD_KEY:
+            case CHECKOUT_THREADS_KEY:
+                parseNonNegative(key, value);
+                break;
+            default:
+                throw new GitLikeException("Unknown setting " + key + ".");
+        }
+    }
+
+    /**
+     * Get a number setting, 0 if the setting is not set
+     */
+    private int getNumber(String key) {
+        String value = get(key);
+        return value == null ? 0 : parseNonNegative(key, value.trim());
+    }
+
+    private static int parseNonNegative(String key, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0)
+                return number;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new GitLikeException("Setting " + key + " must be a non-negative number.");
+    }
+
+    private void save() {
+        try (Writer writer = new FileWriter(configFile)) {
+            getProperties().store(writer, null);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to write file " + configFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Synchronized because settings are read by threads that store objects in parallel
+     */
+    private synchronized Properties getProperties() {
+        if (properties == null) {
+            properties = new Properties();
+            if (configFile.exists()) {
+                try (Reader reader = new FileReader(configFile)) {
+                    properties.load(reader);
+                } catch (IOException excp) {
+                    throw new GitLikeException("Unable to read file " + configFile.getAbsolutePath());
+                }
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,487 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watcher of the working folder that records the paths of changed files, so status and adding all files
+ * read only those paths instead of walking the working folder.
+ * <p>
+ * The monitor runs in its own process and holds a lock on the lock file while it runs. It appends changed
+ * paths to the journal file, one per line after a line with a new session id, an empty line means that
+ * events were lost. The journal is started again with a new session when it grows too large.
+ * <p>
+ * After a command compared the working files with the index, it saves the state file: the session and
+ * the journal offset it read up to, and the paths whose working files did not match the index.
+ * The next command only has to read those paths and the paths recorded after that offset.
+ * When the monitor is not running, the session changed, events were lost or the ignore file changed,
+ * all working files are read.
+ * <p>
+ * A query creates a cookie file in the cookie folder of the repository, which the monitor watches too,
+ * and reads the journal until the monitor has recorded the cookie, so every change made before the query is seen. If the cookie is not recorded within a second,
+ * all working files are read.
+ */
+public class FileMonitor {
+    private static final String MONITOR_FOLDER_NAME = "monitor";
+    private static final String LOCK_FILE_NAME = "lock";
+    private static final String JOURNAL_FILE_NAME = "changes";
+    private static final String STATE_FILE_NAME = "state";
+    private static final String COOKIE_FOLDER_NAME = "cookies";
+
+    private static final int MAGIC = 0x474c464d;
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the journal in bytes after which a new session is started
+     */
+    private static final long JOURNAL_LIMIT = 16 * 1024 * 1024;
+
+    /**
+     * How long a query waits for the monitor to record its cookie before it reads all working files,
+     * and how often it checks
+     */
+    private static final long COOKIE_TIMEOUT_MILLIS = 1000;
+    private static final long COOKIE_POLL_MILLIS = 1;
+
+    /**
+     * Number of bytes read to find the end of the session line
+     */
+    private static final int SESSION_LINE_LIMIT = 64;
+
+    private static final WatchEvent.Kind<?>[] EVENT_KINDS = new WatchEvent.Kind<?>[] {
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY};
+
+    private final File workingFolder;
+    private final File repositoryFolder;
+    private final File monitorFolder;
+    private final File lockFile;
+    private final File journalFile;
+    private final File stateFile;
+    private final File cookieFolder;
+
+    /**
+     * Path of the cookie folder relative to the working folder, as recorded in the journal
+     */
+    private final String cookiePath;
+
+    /**
+     * Session and journal offset read by the last query, the session is null if the monitor is not running
+     */
+    private String session;
+    private long offset;
+
+    /**
+     * Create file monitor
+     * @param repositoryFolder repository folder, of which only the cookie folder is watched
+     * @param workingFolder the folder with the working files
+     */
+    public FileMonitor(File repositoryFolder, File workingFolder) {
+        this.workingFolder = workingFolder;
+        this.repositoryFolder = repositoryFolder;
+        monitorFolder = new File(repositoryFolder, MONITOR_FOLDER_NAME);
+        lockFile = new File(monitorFolder, LOCK_FILE_NAME);
+        journalFile = new File(monitorFolder, JOURNAL_FILE_NAME);
+        stateFile = new File(monitorFolder, STATE_FILE_NAME);
+        cookieFolder = new File(monitorFolder, COOKIE_FOLDER_NAME);
+        cookiePath = workingFolder.getAbsoluteFile().toPath().normalize()
+                .relativize(cookieFolder.getAbsoluteFile().toPath().normalize())
+                .toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Watch the working folder and record changed paths until the thread is interrupted or the process ends.
+     * Ignored folders are watched too, they may contain tracked files.
+     *
+     * @throws GitLikeException if a monitor is already running or a folder cannot be watched
+     */
+    public void run() {
+        if (!cookieFolder.exists() && !cookieFolder.mkdirs())
+            throw new GitLikeException("Unable to create folder " + cookieFolder.getAbsolutePath());
+
+        Path root = workingFolder.getAbsoluteFile().toPath().normalize();
+        Path repositoryPath = repositoryFolder.getAbsoluteFile().toPath().normalize();
+        try (FileChannel lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+             WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            if (lockChannel.tryLock() == null)
+                throw new GitLikeException("A monitor is already running.");
+
+            /* the journal of an earlier monitor must not be read while the folders are registered */
+            Files.deleteIfExists(journalFile.toPath());
+            Map<WatchKey, String> folders = new HashMap<>();
+            register(watcher, folders, root, repositoryPath, root);
+            /* cookies left by queries that did not end are not waited for any more */
+            File[] cookies = cookieFolder.listFiles();
+            if (cookies != null) {
+                for (File cookie: cookies) {
+                    cookie.delete();
+                }
+            }
+            folders.put(cookieFolder.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE), cookiePath);
+
+            FileChannel journal = startJournal();
+            try {
+                while (true) {
+                    StringBuilder lines = new StringBuilder();
+                    boolean isOverflow = false;
+                    for (WatchKey key = watcher.take(); key != null; key = watcher.poll()) {
+                        String folder = folders.get(key);
+                        for (WatchEvent<?> event: key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null) {
+                                isOverflow = true;
+                                continue;
+                            }
+
+                            String name = event.context().toString();
+                            String path = folder.isEmpty() ? name : folder + "/" + name;
+                            Path file = root.resolve(path);
+                            if (folder.equals(cookiePath)) {
+                                lines.append(path).append('\n');
+                                continue;
+                            }
+                            if (file.startsWith(repositoryPath))
+                                continue;
+                            if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                                /* a new folder is walked by the reader, changes of its attributes are not needed */
+                                if (event.kind() != StandardWatchEventKinds.ENTRY_CREATE)
+                                    continue;
+                                register(watcher, folders, root, repositoryPath, file);
+                            }
+                            lines.append(path).append('\n');
+                        }
+                        if (!key.reset())
+                            folders.remove(key);
+                    }
+                    if (isOverflow)
+                        lines.append('\n');
+
+                    ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        journal.write(buffer);
+                    }
+                    if (journal.size() > JOURNAL_LIMIT) {
+                        journal.close();
+                        journal = startJournal();
+                    }
+                }
+            } finally {
+                journal.close();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to watch folder " + root + ": " + excp.getMessage());
+        }
+    }
+
+    /**
+     * Get the paths that may not match the index since the last update: paths recorded by the monitor,
+     * and paths that did not match at the last update. A path can be a folder whose files all may differ.
+     * @return changed paths, null if all working files should be read
+     */
+    public Set<String> getChangedPaths() {
+        session = null;
+        if (!journalFile.exists())
+            return null;
+
+        String journalSession;
+        byte[] data;
+        long start;
+        State state;
+        String cookieName = UUID.randomUUID().toString();
+        File cookie = new File(cookieFolder, cookieName);
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ)) {
+            journalSession = readSession(channel);
+            if (journalSession == null)
+                return null;
+
+            state = readState();
+            start = state != null && state.session.equals(journalSession)
+                    ? state.offset : journalSession.length() + 1;
+
+            /* changes made before the cookie was created are recorded before it */
+            if (!isRunning() || !createCookie(cookie))
+                return null;
+            data = readUntil(channel, start, cookiePath + "/" + cookieName);
+            if (data == null)
+                return null;
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read file " + journalFile.getAbsolutePath());
+        } finally {
+            cookie.delete();
+        }
+
+        /* the journal is trusted only if the monitor that writes it is still running after it was read */
+        if (!isRunning())
+            return null;
+
+        /* the last line may not be written completely yet */
+        int length = data.length;
+        while (length > 0 && data[length - 1] != '\n') {
+            length--;
+        }
+        session = journalSession;
+        offset = start + length;
+        if (state == null || !state.session.equals(journalSession))
+            return null;
+
+        Set<String> paths = new HashSet<>(state.paths);
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (data[i] != '\n')
+                continue;
+            if (i == lineStart)
+                return null;
+            String path = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            lineStart = i + 1;
+            if (path.startsWith(cookiePath + "/"))
+                continue;
+            if (path.equals(IgnoreRules.IGNORE_FILE_NAME))
+                return null;
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Record that the working files match the index, except the files at the given paths,
+     * as of the last call of {@link #getChangedPaths()}. Nothing is recorded if the monitor was not running.
+     */
+    public void update(Collection<String> changedPaths) {
+        if (session == null)
+            return;
+
+        File tempFile = new File(monitorFolder, STATE_FILE_NAME + ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(tempFile.toPath())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(session);
+                out.writeLong(offset);
+                out.writeInt(changedPaths.size());
+                for (String path: changedPaths) {
+                    out.writeUTF(path);
+                }
+                out.flush();
+            }
+            Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to write file " + stateFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Check if a path or one of its folders is reported as changed
+     */
+    public static boolean isChanged(Set<String> changedPaths, String path) {
+        for (int end = path.length(); end > 0; end = path.lastIndexOf('/', end - 1)) {
+            if (changedPaths.contains(path.substring(0, end)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a monitor holds the lock file
+     */
+    private boolean isRunning() {
+        if (!lockFile.exists())
+            return false;
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null)
+                return true;
+            lock.release();
+            return false;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Write a new journal with a new session id and return the channel to append to it
+     */
+    private FileChannel startJournal() throws IOException {
+        Path tempPath = new File(monitorFolder, JOURNAL_FILE_NAME + ".tmp").toPath();
+        FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        channel.write(ByteBuffer.wrap((UUID.randomUUID() + "\n").getBytes(StandardCharsets.UTF_8)));
+        Files.move(tempPath, journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return channel;
+    }
+
+    /**
+     * Read the state file, return null if it does not exist or has an unknown format
+     */
+    private State readState() {
+        if (!stateFile.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(stateFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() > VERSION)
+                return null;
+            State state = new State(in.readUTF(), in.readLong());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                state.paths.add(in.readUTF());
+            }
+            return state;
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read file " + stateFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Register a folder and its subfolders, except the repository folder
+     */
+    private static void register(WatchService watcher, Map<WatchKey, String> folders, Path root,
+                                 Path repositoryPath, Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path folder, BasicFileAttributes attributes)
+                    throws IOException {
+                if (folder.equals(repositoryPath))
+                    return FileVisitResult.SKIP_SUBTREE;
+                try {
+                    WatchKey key = folder.register(watcher, EVENT_KINDS);
+                    folders.put(key, root.relativize(folder).toString().replace(File.separatorChar, '/'));
+                } catch (NoSuchFileException excp) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException excp) {
+                /* the file was removed while the folder was walked */
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Create an empty cookie file, return false if it cannot be created
+     */
+    private static boolean createCookie(File cookie) {
+        try {
+            return cookie.createNewFile();
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the journal from a position until it contains a line, waiting for the monitor to record it
+     * @return the data read, null if the line was not recorded in time or the thread was interrupted
+     */
+    private static byte[] readUntil(FileChannel channel, long start, String line) throws IOException {
+        byte[] expected = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(Utils.BUFFER_SIZE);
+        long position = start;
+        int searched = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COOKIE_TIMEOUT_MILLIS);
+        while (true) {
+            int count;
+            while ((count = channel.read(buffer, position)) > 0) {
+                data.write(buffer.array(), 0, count);
+                position += count;
+                buffer.clear();
+            }
+
+            byte[] bytes = data.toByteArray();
+            for (int lineStart = searched; lineStart + expected.length <= bytes.length; ) {
+                if (Arrays.equals(bytes, lineStart, lineStart + expected.length, expected, 0, expected.length))
+                    return bytes;
+                int end = indexOf(bytes, (byte) '\n', lineStart);
+                if (end < 0)
+                    break;
+                lineStart = end + 1;
+                searched = lineStart;
+            }
+
+            if (System.nanoTime() > deadline)
+                return null;
+            try {
+                Thread.sleep(COOKIE_POLL_MILLIS);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Read the session id on the first line of the journal, return null if it is not written completely
+     */
+    private static String readSession(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SESSION_LINE_LIMIT);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+        }
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) == '\n')
+                return new String(buffer.array(), 0, i, StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    private static class State {
+        private final String session;
+        private final long offset;
+        private final Set<String> paths = new HashSet<>();
+
+        private State(String session, long offset) {
+            this.session = session;
+            this.offset = offset;
+        }
+    }
+}
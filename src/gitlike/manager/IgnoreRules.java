@@ -0,0 +1,104 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Patterns of working files that are not added by directory or glob and are not reported as untracked.
+ * <p>
+ * The ignore file has one glob pattern per line, empty lines and lines starting with '#' are skipped.
+ * A pattern without '/' matches a file or directory name at any depth, other patterns match the path
+ * from the working folder, a leading '/' is dropped. A pattern ending with '/' matches only directories,
+ * a pattern starting with '!' includes again what an earlier pattern ignored. The last matching pattern wins.
+ */
+public class IgnoreRules {
+    public static final String IGNORE_FILE_NAME = ".gitlikeignore";
+
+    private final List<Rule> rules;
+
+    private IgnoreRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Read the ignore file of the working folder, without the file nothing is ignored
+     */
+    public static IgnoreRules load(File workingFolder) {
+        File file = new File(workingFolder, IGNORE_FILE_NAME);
+        if (!file.isFile())
+            return new IgnoreRules(Collections.emptyList());
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read file " + file.getAbsolutePath());
+        }
+
+        List<Rule> rules = new ArrayList<>();
+        for (String line: lines) {
+            String pattern = line.strip();
+            if (pattern.isEmpty() || pattern.startsWith("#"))
+                continue;
+
+            boolean isNegated = pattern.startsWith("!");
+            if (isNegated)
+                pattern = pattern.substring(1);
+            boolean isDirectoryOnly = pattern.endsWith("/");
+            if (isDirectoryOnly)
+                pattern = pattern.substring(0, pattern.length() - 1);
+            boolean isPathPattern = pattern.contains("/");
+            if (pattern.startsWith("/"))
+                pattern = pattern.substring(1);
+            if (pattern.isEmpty())
+                continue;
+
+            rules.add(new Rule(FileSystems.getDefault().getPathMatcher("glob:" + pattern), isNegated,
+                    isDirectoryOnly, isPathPattern));
+        }
+        return new IgnoreRules(rules);
+    }
+
+    /**
+     * Check if a working file or directory is ignored
+     * @param path path from the working folder with '/' between names
+     */
+    public boolean isIgnored(String path, boolean isDirectory) {
+        if (rules.isEmpty())
+            return false;
+
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        boolean isIgnored = false;
+        for (Rule rule: rules) {
+            if (rule.isDirectoryOnly && !isDirectory)
+                continue;
+            if (rule.matcher.matches(Paths.get(rule.isPathPattern ? path : name)))
+                isIgnored = !rule.isNegated;
+        }
+        return isIgnored;
+    }
+
+    private static class Rule {
+        private final PathMatcher matcher;
+        private final boolean isNegated;
+        private final boolean isDirectoryOnly;
+        private final boolean isPathPattern;
+
+        private Rule(PathMatcher matcher, boolean isNegated, boolean isDirectoryOnly, boolean isPathPattern) {
+            this.matcher = matcher;
+            this.isNegated = isNegated;
+            this.isDirectoryOnly = isDirectoryOnly;
+            this.isPathPattern = isPathPattern;
+        }
+    }
+}
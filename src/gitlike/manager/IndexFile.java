@@ -0,0 +1,131 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.Utils;
+import gitlike.object.FileStat;
+import gitlike.object.IndexEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary file with the entries of the index, sorted by path.
+ * <p>
+ * Index file: magic "GLSI", version, number of entries, then for each entry: state, path length,
+ * UTF-8 path, blob id as 20 raw bytes, mode, size, modification time in nanoseconds and inode.
+ * Removed entries have a zero blob id, entries without stat data have size -1.
+ * <p>
+ * The file is read with one mapping and replaced atomically by a complete new file.
+ */
+public class IndexFile {
+    private static final int MAGIC = 0x474c5349;
+    private static final int VERSION = 1;
+    private static final int ID_LENGTH = Utils.UID_LENGTH / 2;
+    private static final String ZERO_ID = "0".repeat(Utils.UID_LENGTH);
+    private static final IndexEntry.State[] STATES = IndexEntry.State.values();
+
+    private final File file;
+    private long modifiedTime = Long.MIN_VALUE;
+
+    public IndexFile(File file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Get the modification time of the file when it was last read or written, in nanoseconds.
+     * Stat data of working files modified at that time or later cannot be trusted,
+     * the files could have changed again within the same clock tick after they were read.
+     */
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    /**
+     * Read all entries by path, the file should exist
+     */
+    public SortedMap<String, IndexEntry> read() {
+        SortedMap<String, IndexEntry> entries = new TreeMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            modifiedTime = Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC)
+                throw new GitLikeException("Unknown index format.");
+            int version = buffer.getInt();
+            if (version > VERSION)
+                throw new GitLikeException("Unsupported index format version " + version + ".");
+
+            int count = buffer.getInt();
+            byte[] id = new byte[ID_LENGTH];
+            for (int i = 0; i < count; i++) {
+                IndexEntry.State state = STATES[buffer.get()];
+                byte[] path = new byte[buffer.getInt()];
+                buffer.get(path);
+                buffer.get(id);
+                int mode = buffer.getInt();
+                long size = buffer.getLong();
+                long entryModifiedTime = buffer.getLong();
+                long inode = buffer.getLong();
+
+                String blobId = state == IndexEntry.State.REMOVED ? null : Utils.bytesToHex(id);
+                FileStat stat = size < 0 ? null : new FileStat(mode, size, entryModifiedTime, inode);
+                IndexEntry entry = new IndexEntry(new String(path, StandardCharsets.UTF_8), blobId, state, stat);
+                entries.put(entry.getPath(), entry);
+            }
+        } catch (IOException | BufferUnderflowException | ArrayIndexOutOfBoundsException excp) {
+            throw new GitLikeException("Unable to read file " + file.getAbsolutePath());
+        }
+        return entries;
+    }
+
+    /**
+     * Replace the file with the entries
+     * @param entries entries sorted by path
+     */
+    public void write(Collection<IndexEntry> entries) {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(tempFile.toPath())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, Utils.BUFFER_SIZE));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (IndexEntry entry: entries) {
+                    byte[] path = entry.getPath().getBytes(StandardCharsets.UTF_8);
+                    FileStat stat = entry.getStat();
+                    out.writeByte(entry.getState().ordinal());
+                    out.writeInt(path.length);
+                    out.write(path);
+                    out.write(Utils.hexToBytes(entry.getBlobId() == null ? ZERO_ID : entry.getBlobId()));
+                    out.writeInt(stat == null ? 0 : stat.getMode());
+                    out.writeLong(stat == null ? -1 : stat.getSize());
+                    out.writeLong(stat == null ? 0 : stat.getModifiedTime());
+                    out.writeLong(stat == null ? 0 : stat.getInode());
+                }
+                out.flush();
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            modifiedTime = Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to write file " + file.getAbsolutePath());
+        }
+    }
+}
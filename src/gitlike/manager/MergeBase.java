@@ -0,0 +1,111 @@
+package gitlike.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the best common ancestors of two commits in the commit graph.
+ * <p>
+ * Commits are walked from both sides in order of decreasing generation number and painted with the
+ * side they are reachable from. A commit reachable from both sides is a merge base, its ancestors are
+ * marked stale because they are worse common ancestors. The walk stops as soon as only stale commits
+ * are left, so the history below the merge bases is not visited.
+ * <p>
+ * A parent always has a smaller generation than its child, so every commit is taken from the queue
+ * at most once, after all its children that are reachable from the two commits. That also means an
+ * ancestor of a merge base is always stale when it is taken, so merge bases never contain each other.
+ */
+public class MergeBase {
+    private static final byte FIRST = 1;
+    private static final byte SECOND = 2;
+    private static final byte STALE = 4;
+    private static final byte QUEUED = 8;
+
+    private final CommitGraph graph;
+    private final byte[] flags;
+    private final PriorityQueue<Integer> queue;
+    private int nonStaleQueued;
+
+    private MergeBase(CommitGraph graph) {
+        this.graph = graph;
+        flags = new byte[graph.size()];
+        /* higher generation first, ties are broken by position so the result is deterministic */
+        queue = new PriorityQueue<>((first, second) -> {
+            int comparison = Integer.compare(graph.getGeneration(second), graph.getGeneration(first));
+            return comparison != 0 ? comparison : Integer.compare(second, first);
+        });
+    }
+
+    /**
+     * Find all merge bases of two commits.
+     * There can be several merge bases after criss-cross merges, they are ordered by decreasing generation,
+     * then by decreasing graph position, so the first one is the most recent and the order never changes.
+     * @param graph commit graph
+     * @param first position of the first commit
+     * @param second position of the second commit
+     * @return positions of the merge bases, empty if the commits have no common ancestor
+     */
+    public static List<Integer> findAll(CommitGraph graph, int first, int second) {
+        return new MergeBase(graph).paint(first, second);
+    }
+
+    /**
+     * Find the first merge base of two commits in the order of {@link #findAll(CommitGraph, int, int)}
+     * @return position of the merge base, or {@link CommitGraph#NONE} if the commits have no common ancestor
+     */
+    public static int find(CommitGraph graph, int first, int second) {
+        List<Integer> bases = findAll(graph, first, second);
+        return bases.isEmpty() ? CommitGraph.NONE : bases.get(0);
+    }
+
+    private List<Integer> paint(int first, int second) {
+        List<Integer> result = new ArrayList<>();
+        if (first == second) {
+            result.add(first);
+            return result;
+        }
+
+        mark(first, FIRST);
+        mark(second, SECOND);
+        while (nonStaleQueued > 0) {
+            int position = queue.poll();
+            flags[position] &= ~QUEUED;
+            int paint = flags[position] & (FIRST | SECOND | STALE);
+            if ((paint & STALE) == 0)
+                nonStaleQueued--;
+
+            if (paint == (FIRST | SECOND)) {
+                result.add(position);
+                paint |= STALE;
+            }
+
+            int parent = graph.getParent(position);
+            if (parent != CommitGraph.NONE)
+                mark(parent, paint);
+            int mergedParent = graph.getMergedParent(position);
+            if (mergedParent != CommitGraph.NONE)
+                mark(mergedParent, paint);
+        }
+        return result;
+    }
+
+    /**
+     * Add paint to a commit and queue it if the paint is new
+     */
+    private void mark(int position, int paint) {
+        int current = flags[position];
+        if ((current & paint) == paint)
+            return;
+
+        flags[position] |= paint;
+        if ((current & QUEUED) == 0) {
+            flags[position] |= QUEUED;
+            queue.add(position);
+            if ((flags[position] & STALE) == 0)
+                nonStaleQueued++;
+        } else if ((current & STALE) == 0 && (paint & STALE) != 0) {
+            nonStaleQueued--;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Persistent index of commit log messages by commit graph position, so commits can be found by message
+ * without reading all of them.
+ * <p>
+ * Index file: magic "GLMI", version, number of graph positions it covers, number of message entries,
+ * number of trigram entries, fan-out table, message entries, trigram entries.
+ * A message entry is the hash of the message and a position, a trigram entry is three consecutive bytes
+ * of the UTF-8 message and a position, both packed into a long and sorted.
+ * The fan-out table has 65536 cumulative counts of message entries by the high 16 bits of the hash,
+ * so an exact lookup reads one small range.
+ * <p>
+ * Hashes and trigrams only select candidates, their messages are compared before they are returned.
+ * Positions added to the graph after the index file was written are checked directly,
+ * the index file is rewritten when there are many of them, by merging them into the existing entries.
+ */
+public class MessageIndex {
+    private static final String INDEX_FILE_NAME = "messages.idx";
+
+    private static final int MAGIC = 0x474c4d49;
+    private static final int VERSION = 1;
+
+    private static final int FANOUT_SIZE = 1 << 16;
+    private static final int HEADER_LENGTH = 20;
+    private static final int ENTRIES_OFFSET = HEADER_LENGTH + FANOUT_SIZE * 4;
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * Number of positions not covered by the index file after which it is rewritten
+     */
+    private static final int REINDEX_THRESHOLD = 512;
+
+    private final File indexFolder;
+    private final File indexFile;
+    private final CommitGraph graph;
+    private final IntFunction<String> messageReader;
+
+    private boolean isLoaded;
+    private MappedByteBuffer index;
+    private LongBuffer entries;
+    private int indexedSize;
+    private int messageCount;
+    private int gramCount;
+
+    /**
+     * Create message index
+     * @param indexFolder the folder that contains the index file
+     * @param graph commit graph whose positions are indexed
+     * @param messageReader reads the log message of the commit at a graph position
+     */
+    public MessageIndex(File indexFolder, CommitGraph graph, IntFunction<String> messageReader) {
+        this.indexFolder = indexFolder;
+        indexFile = new File(indexFolder, INDEX_FILE_NAME);
+        this.graph = graph;
+        this.messageReader = messageReader;
+    }
+
+    /**
+     * Rewrite the index file if many commits were added to the graph since it was written
+     */
+    public void update() {
+        load();
+        if (graph.size() - indexedSize >= REINDEX_THRESHOLD)
+            writeIndex();
+    }
+
+    /**
+     * Get positions of commits with the message, in graph order
+     */
+    public List<Integer> find(String message) {
+        update();
+        List<Integer> result = new ArrayList<>();
+        if (index != null) {
+            /* entries with the same hash are sorted by position */
+            int hash = message.hashCode();
+            int bucket = bucket(hash);
+            int low = bucket == 0 ? 0 : index.getInt(HEADER_LENGTH + (bucket - 1) * 4);
+            int high = index.getInt(HEADER_LENGTH + bucket * 4);
+            for (int i = low; i < high; i++) {
+                long entry = entries.get(i);
+                if ((int) (entry >> 32) == hash && message.equals(messageReader.apply((int) entry)))
+                    result.add((int) entry);
+            }
+        }
+
+        for (int position = indexedSize; position < graph.size(); position++) {
+            if (message.equals(messageReader.apply(position)))
+                result.add(position);
+        }
+        return result;
+    }
+
+    /**
+     * Get positions of commits whose message contains the text, in graph order.
+     * Texts shorter than three bytes match too many commits to use the index, so all messages are checked.
+     */
+    public List<Integer> findContaining(String text) {
+        update();
+        List<Integer> result = new ArrayList<>();
+        long[] grams = getGrams(text);
+        if (grams.length == 0) {
+            for (int position = 0; position < indexedSize; position++) {
+                if (messageReader.apply(position).contains(text))
+                    result.add(position);
+            }
+        } else {
+            int[] candidates = null;
+            for (long gram: grams) {
+                int[] positions = getGramPositions(gram);
+                candidates = candidates == null ? positions : intersect(candidates, positions);
+                if (candidates.length == 0)
+                    break;
+            }
+            for (int position: candidates) {
+                if (messageReader.apply(position).contains(text))
+                    result.add(position);
+            }
+        }
+
+        for (int position = indexedSize; position < graph.size(); position++) {
+            if (messageReader.apply(position).contains(text))
+                result.add(position);
+        }
+        return result;
+    }
+
+    private void load() {
+        if (isLoaded)
+            return;
+        isLoaded = true;
+        if (!indexFile.exists()) {
+            index = null;
+            entries = LongBuffer.allocate(0);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < ENTRIES_OFFSET || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getInt(8) > graph.size()
+                    || buffer.capacity() != ENTRIES_OFFSET + ((long) buffer.getInt(12) + buffer.getInt(16)) * 8) {
+                entries = LongBuffer.allocate(0);
+                return;
+            }
+            index = buffer;
+            indexedSize = buffer.getInt(8);
+            messageCount = buffer.getInt(12);
+            gramCount = buffer.getInt(16);
+            buffer.position(ENTRIES_OFFSET);
+            entries = buffer.slice().asLongBuffer();
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read file " + indexFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Merge the entries of the positions that are not covered into the existing entries and write the index
+     */
+    private void writeIndex() {
+        int size = graph.size();
+        int addedSize = size - indexedSize;
+        long[] addedMessages = new long[addedSize];
+        List<long[]> addedGramLists = new ArrayList<>(addedSize);
+        int addedGramCount = 0;
+        for (int i = 0; i < addedSize; i++) {
+            int position = indexedSize + i;
+            String message = messageReader.apply(position);
+            addedMessages[i] = (long) message.hashCode() << 32 | position;
+            long[] grams = getGrams(message);
+            for (int j = 0; j < grams.length; j++) {
+                grams[j] = grams[j] << 32 | position;
+            }
+            addedGramLists.add(grams);
+            addedGramCount += grams.length;
+        }
+        long[] addedGrams = new long[addedGramCount];
+        int count = 0;
+        for (long[] grams: addedGramLists) {
+            System.arraycopy(grams, 0, addedGrams, count, grams.length);
+            count += grams.length;
+        }
+        Arrays.sort(addedMessages);
+        Arrays.sort(addedGrams);
+
+        int[] fanout = new int[FANOUT_SIZE];
+        for (long entry: addedMessages) {
+            fanout[bucket((int) (entry >> 32))]++;
+        }
+        for (int bucket = 0; bucket < FANOUT_SIZE; bucket++) {
+            int previous = bucket == 0 ? 0 : fanout[bucket - 1];
+            int indexed = index == null ? 0 : index.getInt(HEADER_LENGTH + bucket * 4);
+            int indexedPrevious = index == null || bucket == 0 ? 0 : index.getInt(HEADER_LENGTH + (bucket - 1) * 4);
+            fanout[bucket] += previous + indexed - indexedPrevious;
+        }
+
+        if (!indexFolder.exists() && !indexFolder.mkdirs())
+            throw new GitLikeException("Unable to create folder " + indexFolder.getAbsolutePath());
+        File tempFile = new File(indexFolder, INDEX_FILE_NAME + ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(tempFile.toPath())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(size);
+                out.writeInt(messageCount + addedMessages.length);
+                out.writeInt(gramCount + addedGrams.length);
+                for (int value: fanout) {
+                    out.writeInt(value);
+                }
+                writeMerged(out, 0, messageCount, addedMessages);
+                writeMerged(out, messageCount, gramCount, addedGrams);
+                out.flush();
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to write file " + indexFile.getAbsolutePath());
+        }
+
+        isLoaded = false;
+        load();
+    }
+
+    /**
+     * Write sorted entries of the index file merged with sorted added entries
+     */
+    private void writeMerged(DataOutputStream out, int offset, int length, long[] added) throws IOException {
+        int i = 0;
+        int j = 0;
+        while (i < length || j < added.length) {
+            if (j == added.length || i < length && entries.get(offset + i) < added[j])
+                out.writeLong(entries.get(offset + i++));
+            else
+                out.writeLong(added[j++]);
+        }
+    }
+
+    /**
+     * Get positions of trigram entries with the trigram, sorted
+     */
+    private int[] getGramPositions(long gram) {
+        int low = 0;
+        int high = gramCount;
+        long key = gram << 32;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.get(messageCount + middle) < key)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        int end = low;
+        while (end < gramCount && entries.get(messageCount + end) >> 32 == gram) {
+            end++;
+        }
+        int[] positions = new int[end - low];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = (int) entries.get(messageCount + low + i);
+        }
+        return positions;
+    }
+
+    /**
+     * Get distinct trigrams of the UTF-8 text, sorted
+     */
+    private static long[] getGrams(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < GRAM_LENGTH)
+            return new long[0];
+        long[] grams = new long[bytes.length - GRAM_LENGTH + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | bytes[i + 2] & 0xff;
+        }
+        Arrays.sort(grams);
+        int count = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1])
+                grams[count++] = grams[i];
+        }
+        return Arrays.copyOf(grams, count);
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Fan-out bucket of a message hash, buckets follow the signed order of hashes
+     */
+    private static int bucket(int hash) {
+        return (hash >> 16) + (FANOUT_SIZE / 2);
+    }
+}
@@ -0,0 +1,101 @@
+package gitlike.manager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache of decoded immutable objects by id, bounded by the estimated size of the objects in bytes.
+ * When the cache is full the least recently used objects are evicted.
+ * <p>
+ * Only objects that never change after they are stored may be cached, such as commits and blobs.
+ */
+public class ObjectCache<T> {
+    private final long maxWeight;
+    private final ToLongFunction<T> weigher;
+
+    /**
+     * Entries in access order, the least recently used entry is the first one
+     */
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Create cache
+     * @param maxWeight the maximum total size of cached objects in bytes
+     * @param weigher estimates the size of an object in memory in bytes
+     */
+    public ObjectCache(long maxWeight, ToLongFunction<T> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get cached object, return null if the object is not cached
+     */
+    public synchronized T get(String id) {
+        Entry<T> entry = entries.get(id);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.object;
+    }
+
+    /**
+     * Cache an object and evict the least recently used objects while the cache is over its size.
+     * Objects larger than the whole cache are not cached.
+     */
+    public synchronized void put(String id, T object) {
+        long objectWeight = weigher.applyAsLong(object);
+        if (objectWeight > maxWeight)
+            return;
+
+        Entry<T> previous = entries.put(id, new Entry<>(object, objectWeight));
+        if (previous != null)
+            weight -= previous.weight;
+        weight += objectWeight;
+
+        Iterator<Entry<T>> iterator = entries.values().iterator();
+        while (weight > maxWeight) {
+            Entry<T> eldest = iterator.next();
+            weight -= eldest.weight;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Get the estimated size of cached objects in bytes
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private static class Entry<T> {
+        private final T object;
+        private final long weight;
+
+        private Entry(T object, long weight) {
+            this.object = object;
+            this.weight = weight;
+        }
+    }
+}
@@ -3,9 +3,14 @@ package gitlike.manager;
 import gitlike.GitLikeException;
 import gitlike.Initializable;
 import gitlike.Utils;
+import gitlike.codec.ObjectCodec;
+import gitlike.object.FileContent;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,33 +18,40 @@ import java.util.List;
  * Class that encapsulate working with objects at the file level.
  * All other managers are a wrapper over this class with a different interface and partial functionality.
  */
-public class ObjectManager<T extends Serializable> implements Initializable {
+public class ObjectManager<T> implements Initializable {
     protected File objectFolder;
+    protected final ObjectCodec<T> codec;
 
     /**
      * Create object manager
      * @param objectFolder the folder that contains the objects for which the class is responsible.
+     * @param codec the encoding of the stored objects
      */
-    public ObjectManager(File objectFolder) {
+    public ObjectManager(File objectFolder, ObjectCodec<T> codec) {
         this.objectFolder = objectFolder;
+        this.codec = codec;
     }
 
     /**
-     * Serialize an object and save to objectFolder
+     * Encode an object and save to objectFolder
      */
     public void save(String fileName, T object) {
-        File file = new File(objectFolder, fileName);
-        Utils.writeObject(file, object);
+        File file = getFile(fileName);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), Utils.BUFFER_SIZE)) {
+            codec.encode(object, out);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to write file " + file.getAbsolutePath());
+        }
     }
 
     /**
      * Get object from objectFolder
      */
-    public T get(String fileName,  Class<T> expectedClass) {
-        File file = new File(objectFolder, fileName);
+    public T get(String fileName) {
+        File file = getFile(fileName);
         if (!file.exists())
             return null;
-        return Utils.readObject(file, expectedClass);
+        return codec.decode(new FileContent(file));
     }
 
     /**
@@ -47,7 +59,7 @@ public class ObjectManager<T extends Serializable> implements Initializable {
      * returns whether the deletion was successful
      */
     public boolean delete(String fileName) {
-        File file = new File(objectFolder, fileName);
+        File file = getFile(fileName);
         return file.delete();
     }
 
@@ -55,24 +67,24 @@ public class ObjectManager<T extends Serializable> implements Initializable {
      * Check if the objectFolder contains a file
      */
     public boolean contains(String fileName) {
-        File file = new File(objectFolder, fileName);
+        File file = getFile(fileName);
         return file.exists();
     }
 
     /**
      * Get all objects stored in the objectFolder
      */
-    public List<T> getAll(Class<T> expectedClass) {
+    public List<T> getAll() {
         List<T> objectList = new ArrayList<>();
 
-        List<String> files = Utils.plainFilenamesIn(objectFolder);
+        List<String> files = getAllFileNames();
 
         if (files == null)
             return objectList;
 
         for (String fileName: files) {
-            File file = new File(objectFolder, fileName);
-            T object = Utils.readObject(file, expectedClass);
+            File file = getFile(fileName);
+            T object = codec.decode(new FileContent(file));
             objectList.add(object);
         }
 
@@ -90,18 +102,25 @@ public class ObjectManager<T extends Serializable> implements Initializable {
      * Clear the object folder
      */
     public void clear() {
-        List<String> files = Utils.plainFilenamesIn(objectFolder);
+        List<String> files = getAllFileNames();
 
         if (files == null)
             return;
 
         for (String fileName: files) {
-            File file = new File(objectFolder, fileName);
+            File file = getFile(fileName);
             if (!file.delete())
                 throw new GitLikeException("Unable to delete file " + file.getAbsolutePath());
         }
     }
 
+    /**
+     * Get the file that stores an object
+     */
+    protected File getFile(String fileName) {
+        return new File(objectFolder, fileName);
+    }
+
     /**
      * Check if manager is initialized
      */
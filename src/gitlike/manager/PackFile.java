@@ -0,0 +1,577 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.Utils;
+import gitlike.object.Content;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Append-only file that stores many objects, together with a sorted index that maps object id to its location.
+ * <p>
+ * Pack layout:
+ *  header: magic "GLPK", version
+ *  records: [20 byte id][data length][data]
+ *  The data length takes 4 bytes in version 1 and 8 bytes in version 2.
+ * <p>
+ * Index layout:
+ *  header: magic "GLIX", version, length of the pack covered by the index, number of entries
+ *  fan-out table: 256 cumulative counts of entries by the first byte of the id
+ *  entries sorted by id: [20 byte id][8 byte data offset][data length]
+ *  The data length takes 4 bytes in version 1 and 8 bytes in version 2.
+ * <p>
+ * The index is memory-mapped and searched with a binary search inside the fan-out range.
+ * Records appended after the last index rewrite are recovered by scanning the tail of the pack,
+ * so the index is only rewritten (atomically) once enough records have accumulated.
+ * Object data is streamed in and out of the pack, so objects larger than the heap can be stored.
+ * <p>
+ * Objects may be read and appended from several threads: lookups and appends are synchronized,
+ * object data is read with positional reads that do not depend on the append position.
+ * Several processes may use the pack at once: appends and index rewrites hold a lock on the pack,
+ * readers open it read-only and skip a record at the end that is not complete, which may still be written.
+ * Such a record is cut off only by a writer that holds the lock, when it is left over from a failed append.
+ */
+public class PackFile {
+    private static final String PACK_FOLDER_NAME = "pack";
+    private static final String PACK_FILE_NAME = "objects.pack";
+    private static final String INDEX_FILE_NAME = "objects.idx";
+
+    private static final int PACK_MAGIC = 0x474c504b;
+    private static final int INDEX_MAGIC = 0x474c4958;
+    private static final int VERSION = 2;
+
+    private static final int ID_LENGTH = 20;
+    private static final int PACK_HEADER_LENGTH = 8;
+    private static final int FANOUT_SIZE = 256;
+    private static final int INDEX_HEADER_LENGTH = 20 + FANOUT_SIZE * 4;
+
+    /**
+     * Number of unindexed records after which the index is rewritten
+     */
+    private static final int REINDEX_THRESHOLD = 512;
+
+    private final File packFolder;
+    private final File packFile;
+    private final File indexFile;
+
+    private boolean isLoaded;
+    private FileChannel channel;
+    private FileChannel writeChannel;
+    private int packVersion = VERSION;
+
+    /**
+     * Length of the pack up to the end of the last complete record that was read or written
+     */
+    private long packLength;
+    private MappedByteBuffer index;
+    private int indexVersion;
+    private int indexSize;
+
+    /**
+     * Records that are present in the pack but not yet in the index
+     */
+    private final NavigableMap<String, Location> unindexed = new TreeMap<>();
+
+    /**
+     * Writes object data to the pack
+     */
+    public interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Create a pack inside the given object folder
+     */
+    public PackFile(File objectFolder) {
+        packFolder = new File(objectFolder, PACK_FOLDER_NAME);
+        packFile = new File(packFolder, PACK_FILE_NAME);
+        indexFile = new File(packFolder, INDEX_FILE_NAME);
+    }
+
+    /**
+     * Check if the pack contains an object
+     */
+    public boolean contains(String id) {
+        return find(id) != null;
+    }
+
+    /**
+     * Get object data from the pack, the data is read only when the returned content is opened.
+     * Returns null if no object was found.
+     */
+    public Content read(String id) {
+        Location location = find(id);
+        if (location == null)
+            return null;
+        return new Region(location.offset, location.length);
+    }
+
+    /**
+     * Append object data produced by the writer to the end of the pack
+     */
+    public synchronized void append(String id, Writer writer) {
+        load();
+        /* another thread may have stored the same object */
+        if (find(id) != null)
+            return;
+        try {
+            if (writeChannel == null) {
+                if (!packFolder.exists() && !packFolder.mkdirs())
+                    throw new GitLikeException("Unable to create folder " + packFolder.getAbsolutePath());
+                writeChannel = FileChannel.open(packFile.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            FileLock lock = writeChannel.lock();
+            try {
+                appendLocked(id, writer);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to write pack " + packFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Append a record while the lock on the pack is held
+     */
+    private void appendLocked(String id, Writer writer) throws IOException {
+        if (channel == null)
+            create();
+        /* records appended by other processes are read, an incomplete record under the lock is torn */
+        scanTail();
+        if (find(id) != null)
+            return;
+        if (writeChannel.size() > packLength)
+            writeChannel.truncate(packLength);
+
+        /* the length is unknown until the data is written, so a placeholder marks an incomplete record */
+        long recordOffset = packLength;
+        long dataOffset = recordOffset + recordHeaderLength(packVersion);
+        writeFully(recordHeader(id, -1), recordOffset);
+
+        long length;
+        try {
+            writeChannel.position(dataOffset);
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(writeChannel), Utils.BUFFER_SIZE);
+            writer.write(out);
+            out.flush();
+            length = writeChannel.position() - dataOffset;
+            if (packVersion == 1 && length > Integer.MAX_VALUE)
+                throw new GitLikeException("Object " + id + " is too large for pack version 1.");
+        } catch (IOException | RuntimeException excp) {
+            writeChannel.truncate(recordOffset);
+            throw excp;
+        }
+        writeFully(recordHeader(id, length), recordOffset);
+
+        packLength = dataOffset + length;
+        unindexed.put(id, new Location(dataOffset, length));
+        if (unindexed.size() >= REINDEX_THRESHOLD)
+            writeIndex();
+    }
+
+    /**
+     * Get the number of objects in the pack
+     */
+    public synchronized int size() {
+        load();
+        return indexSize + unindexed.size();
+    }
+
+    /**
+     * Get the ids of all objects in the pack in lexicographic order
+     */
+    public synchronized List<String> getAllIds() {
+        load();
+        List<String> ids = new ArrayList<>(indexSize + unindexed.size());
+        for (int i = 0; i < indexSize; i++) {
+            ids.add(toHex(index, entryPosition(i)));
+        }
+        ids.addAll(unindexed.keySet());
+        ids.sort(null);
+        return ids;
+    }
+
+    /**
+     * Get the ids that start with the prefix in lexicographic order, at most limit ids.
+     * The index is searched with binary search, so objects are not read.
+     */
+    public synchronized List<String> getIdsStartingWith(String prefix, int limit) {
+        List<String> ids = new ArrayList<>();
+        if (prefix.length() > ID_LENGTH * 2 || !isObjectId(padId(prefix)))
+            return ids;
+
+        load();
+        for (int i = findFirstIndexed(padId(prefix)); i < indexSize && ids.size() < limit; i++) {
+            String id = toHex(index, entryPosition(i));
+            if (!id.startsWith(prefix))
+                break;
+            ids.add(id);
+        }
+        for (String id: unindexed.tailMap(prefix, true).keySet()) {
+            if (!id.startsWith(prefix))
+                break;
+            ids.add(id);
+        }
+
+        ids.sort(null);
+        return ids.size() > limit ? new ArrayList<>(ids.subList(0, limit)) : ids;
+    }
+
+    /**
+     * Check if the name is a full object id that can be stored in a pack
+     */
+    public static boolean isObjectId(String name) {
+        if (name.length() != ID_LENGTH * 2)
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0 || Character.isUpperCase(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private synchronized Location find(String id) {
+        if (!isObjectId(id))
+            return null;
+
+        load();
+        Location location = unindexed.get(id);
+        if (location != null)
+            return location;
+        return findIndexed(id);
+    }
+
+    private Location findIndexed(String id) {
+        if (indexSize == 0)
+            return null;
+
+        byte[] key = Utils.hexToBytes(id);
+        int first = key[0] & 0xff;
+        int low = first == 0 ? 0 : index.getInt(20 + (first - 1) * 4);
+        int high = index.getInt(20 + first * 4) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = entryPosition(middle);
+            int comparison = compare(index, position, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return entryLocation(position);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the first index entry that is not less than the id
+     */
+    private int findFirstIndexed(String id) {
+        byte[] key = Utils.hexToBytes(id);
+        int low = 0;
+        int high = indexSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(index, entryPosition(middle), key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static String padId(String prefix) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < ID_LENGTH * 2)
+            result.append('0');
+        return result.toString();
+    }
+
+    /**
+     * Map the index and recover the records that were appended after it was written
+     */
+    private synchronized void load() {
+        if (isLoaded)
+            return;
+        isLoaded = true;
+
+        if (!packFile.exists())
+            return;
+
+        try {
+            channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+            /* the header of a new pack may not be written yet */
+            if (channel.size() < PACK_HEADER_LENGTH) {
+                channel.close();
+                channel = null;
+                return;
+            }
+            readHeader();
+
+            long indexedLength = PACK_HEADER_LENGTH;
+            if (indexFile.exists()) {
+                try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+                    int version = buffer.capacity() >= INDEX_HEADER_LENGTH ? buffer.getInt(4) : 0;
+                    if (buffer.capacity() >= INDEX_HEADER_LENGTH && buffer.getInt(0) == INDEX_MAGIC
+                            && version >= 1 && version <= VERSION && buffer.getLong(8) <= channel.size()) {
+                        index = buffer;
+                        indexVersion = version;
+                        indexedLength = buffer.getLong(8);
+                        indexSize = buffer.getInt(16);
+                    }
+                }
+            }
+
+            packLength = indexedLength;
+            scanTail();
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to open pack " + packFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Write the header of a new pack, or read the header of a pack that another process created
+     * after this pack was loaded. Called while the lock is held.
+     */
+    private void create() throws IOException {
+        if (writeChannel.size() < PACK_HEADER_LENGTH) {
+            writeChannel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_LENGTH);
+            header.putInt(PACK_MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+        }
+        channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+        readHeader();
+        packLength = PACK_HEADER_LENGTH;
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_LENGTH);
+        readFully(header, 0);
+        packVersion = header.getInt(4);
+        if (header.getInt(0) != PACK_MAGIC || packVersion < 1 || packVersion > VERSION)
+            throw new GitLikeException("Unsupported pack " + packFile.getAbsolutePath());
+    }
+
+    /**
+     * Collect complete records located after the known part of the pack.
+     * A record that is not complete is skipped, it may still be written by another process.
+     */
+    private void scanTail() throws IOException {
+        long size = channel.size();
+        int headerLength = recordHeaderLength(packVersion);
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        while (packLength + headerLength <= size) {
+            header.clear();
+            readFully(header, packLength);
+            String id = toHex(header, 0);
+            long length = packVersion == 1 ? header.getInt(ID_LENGTH) : header.getLong(ID_LENGTH);
+            long dataOffset = packLength + headerLength;
+            if (length < 0 || dataOffset + length > size)
+                break;
+            if (findIndexed(id) == null)
+                unindexed.putIfAbsent(id, new Location(dataOffset, length));
+            packLength = dataOffset + length;
+        }
+    }
+
+    /**
+     * Merge unindexed records into a new index and atomically replace the old one, called while the lock is held
+     */
+    private void writeIndex() throws IOException {
+        Map<String, Location> entries = new TreeMap<>(unindexed);
+        for (int i = 0; i < indexSize; i++) {
+            int position = entryPosition(i);
+            entries.putIfAbsent(toHex(index, position), entryLocation(position));
+        }
+
+        int entryLength = indexEntryLength(VERSION);
+        int[] fanout = new int[FANOUT_SIZE];
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_LENGTH + entries.size() * entryLength);
+        buffer.position(INDEX_HEADER_LENGTH);
+        for (Map.Entry<String, Location> entry: entries.entrySet()) {
+            byte[] id = Utils.hexToBytes(entry.getKey());
+            fanout[id[0] & 0xff]++;
+            buffer.put(id).putLong(entry.getValue().offset).putLong(entry.getValue().length);
+        }
+        buffer.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putLong(8, packLength).putInt(16, entries.size());
+        int total = 0;
+        for (int i = 0; i < FANOUT_SIZE; i++) {
+            total += fanout[i];
+            buffer.putInt(20 + i * 4, total);
+        }
+        buffer.flip();
+
+        File tempFile = new File(packFolder, INDEX_FILE_NAME + ".tmp");
+        try (FileChannel indexChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                indexChannel.write(buffer);
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        indexVersion = VERSION;
+        indexSize = entries.size();
+        unindexed.clear();
+    }
+
+    private ByteBuffer recordHeader(String id, long length) {
+        ByteBuffer header = ByteBuffer.allocate(recordHeaderLength(packVersion));
+        header.put(Utils.hexToBytes(id));
+        if (packVersion == 1)
+            header.putInt((int) length);
+        else
+            header.putLong(length);
+        return header.flip();
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0)
+                throw new EOFException("Unexpected end of pack");
+            offset += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += writeChannel.write(buffer, offset);
+        }
+    }
+
+    private Location entryLocation(int position) {
+        long offset = index.getLong(position + ID_LENGTH);
+        long length = indexVersion == 1 ? index.getInt(position + ID_LENGTH + 8)
+                : index.getLong(position + ID_LENGTH + 8);
+        return new Location(offset, length);
+    }
+
+    private int entryPosition(int entry) {
+        return INDEX_HEADER_LENGTH + entry * indexEntryLength(indexVersion);
+    }
+
+    private static int recordHeaderLength(int version) {
+        return ID_LENGTH + (version == 1 ? 4 : 8);
+    }
+
+    private static int indexEntryLength(int version) {
+        return ID_LENGTH + 8 + (version == 1 ? 4 : 8);
+    }
+
+    private static int compare(ByteBuffer buffer, int position, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            int comparison = Integer.compare(buffer.get(position + i) & 0xff, key[i] & 0xff);
+            if (comparison != 0)
+                return comparison;
+        }
+        return 0;
+    }
+
+    private static String toHex(ByteBuffer buffer, int position) {
+        StringBuilder result = new StringBuilder(ID_LENGTH * 2);
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int value = buffer.get(position + i);
+            result.append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Position of object data inside the pack
+     */
+    private static class Location {
+        private final long offset;
+        private final long length;
+
+        private Location(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Object data inside the pack, read with positional reads so several regions can be open at once
+     */
+    private class Region implements Content {
+        private final long offset;
+        private final long length;
+
+        private Region(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long size() {
+            return length;
+        }
+
+        @Override
+        public InputStream open() {
+            return new InputStream() {
+                private long position = offset;
+                private final long end = offset + length;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] bytes, int off, int len) throws IOException {
+                    if (len == 0)
+                        return 0;
+                    if (position >= end)
+                        return -1;
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, off, (int) Math.min(len, end - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0)
+                        throw new EOFException("Unexpected end of pack");
+                    position += read;
+                    return read;
+                }
+
+                @Override
+                public long skip(long count) {
+                    long skipped = Math.max(0, Math.min(count, end - position));
+                    position += skipped;
+                    return skipped;
+                }
+
+                @Override
+                public int available() {
+                    return (int) Math.min(Integer.MAX_VALUE, end - position);
+                }
+            };
+        }
+    }
+}
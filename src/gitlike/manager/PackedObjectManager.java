@@ -0,0 +1,215 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.codec.ObjectCodec;
+import gitlike.object.Content;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Object manager for immutable objects identified by SHA-1 id.
+ * New objects are appended to a pack file instead of being written as one file per object.
+ * Loose objects written by older versions are still readable and can be moved into the pack.
+ */
+public class PackedObjectManager<T> extends ShardedObjectManager<T> {
+    /**
+     * Objects whose encoded data is at most this size are encoded before the pack is locked,
+     * so several threads can compress objects at once, larger objects are streamed into the pack
+     */
+    private static final int BUFFERED_ENCODE_LIMIT = 16 * 1024 * 1024;
+
+    private final PackFile packFile;
+    private final ObjectCache<T> cache;
+
+    /**
+     * Create packed object manager without a cache
+     * @param objectFolder the folder that contains the pack and the loose objects
+     * @param codec the encoding of the stored objects
+     */
+    public PackedObjectManager(File objectFolder, ObjectCodec<T> codec) {
+        this(objectFolder, codec, null);
+    }
+
+    /**
+     * Create packed object manager
+     * @param objectFolder the folder that contains the pack and the loose objects
+     * @param codec the encoding of the stored objects
+     * @param cache cache of decoded objects, can be null
+     */
+    public PackedObjectManager(File objectFolder, ObjectCodec<T> codec, ObjectCache<T> cache) {
+        super(objectFolder, codec);
+        packFile = new PackFile(objectFolder);
+        this.cache = cache;
+    }
+
+    /**
+     * Encode an object and append it to the pack.
+     * Objects are immutable, so an object that is already stored is not written again.
+     */
+    @Override
+    public void save(String id, T object) {
+        if (contains(id))
+            return;
+
+        BoundedOutputStream buffer = new BoundedOutputStream(BUFFERED_ENCODE_LIMIT);
+        try {
+            codec.encode(object, buffer);
+        } catch (BoundedOutputStream.LimitExceededException excp) {
+            packFile.append(id, out -> codec.encode(object, out));
+            return;
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to encode object " + id);
+        }
+        packFile.append(id, buffer::writeTo);
+    }
+
+    /**
+     * Get object from the cache, the pack or the loose objects
+     */
+    @Override
+    public T get(String id) {
+        if (cache == null)
+            return load(id);
+
+        T object = cache.get(id);
+        if (object == null) {
+            object = load(id);
+            if (object != null)
+                cache.put(id, object);
+        }
+        return object;
+    }
+
+    /**
+     * Get object from the pack or the loose objects without using the cache,
+     * for scans over all objects that would evict everything else from it
+     */
+    public T getUncached(String id) {
+        return load(id);
+    }
+
+    /**
+     * Check if the object is stored in the pack or as a loose object
+     */
+    @Override
+    public boolean contains(String id) {
+        return packFile.contains(id) || super.contains(id);
+    }
+
+    /**
+     * Get all objects stored in the pack and as loose objects, the cache is not used
+     */
+    @Override
+    public List<T> getAll() {
+        List<T> objectList = new ArrayList<>();
+        /* a full scan would evict everything else from the cache, so it does not use it */
+        for (String id: getAllFileNames()) {
+            objectList.add(load(id));
+        }
+        return objectList;
+    }
+
+    /**
+     * Get the number of objects stored in the pack and as loose objects
+     */
+    public int size() {
+        List<String> looseIds = super.getAllFileNames();
+        return packFile.size() + (looseIds == null ? 0 : looseIds.size());
+    }
+
+    /**
+     * Get the ids of all objects stored in the pack and as loose objects in lexicographic order
+     */
+    @Override
+    public List<String> getAllFileNames() {
+        List<String> looseIds = super.getAllFileNames();
+        if (looseIds == null || looseIds.isEmpty())
+            return packFile.getAllIds();
+
+        TreeSet<String> ids = new TreeSet<>(packFile.getAllIds());
+        ids.addAll(looseIds);
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Get the ids of objects in the pack and loose objects that start with the prefix
+     * in lexicographic order, at most limit ids
+     */
+    @Override
+    public List<String> getFileNamesStartingWith(String prefix, int limit) {
+        List<String> looseIds = super.getFileNamesStartingWith(prefix, limit);
+        if (looseIds.isEmpty())
+            return packFile.getIdsStartingWith(prefix, limit);
+
+        TreeSet<String> ids = new TreeSet<>(packFile.getIdsStartingWith(prefix, limit));
+        ids.addAll(looseIds);
+        List<String> result = new ArrayList<>(ids);
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Move all loose objects into the pack.
+     * Returns the number of moved objects.
+     */
+    public int migrateLooseObjects() {
+        List<String> looseIds = super.getAllFileNames();
+        if (looseIds == null)
+            return 0;
+
+        int count = 0;
+        for (String id: looseIds) {
+            if (!PackFile.isObjectId(id))
+                continue;
+            File file = getFile(id);
+            if (!packFile.contains(id))
+                packFile.append(id, out -> Files.copy(file.toPath(), out));
+            if (!file.delete())
+                throw new GitLikeException("Unable to delete file " + file.getAbsolutePath());
+            count++;
+        }
+        deleteEmptyShards();
+        return count;
+    }
+
+    private T load(String id) {
+        Content data = packFile.read(id);
+        if (data == null)
+            return super.get(id);
+        return codec.decode(data);
+    }
+
+    /**
+     * In-memory output that fails once more than a fixed number of bytes are written
+     */
+    private static class BoundedOutputStream extends ByteArrayOutputStream {
+        private final int limit;
+
+        private BoundedOutputStream(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) {
+            if (count + 1 > limit)
+                throw new LimitExceededException();
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            if (count + len > limit)
+                throw new LimitExceededException();
+            super.write(bytes, off, len);
+        }
+
+        private static class LimitExceededException extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.Utils;
+import gitlike.codec.ObjectCodec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Object manager for objects identified by SHA-1 id that are stored as one file per object.
+ * Objects are spread over subfolders named by the first two hex characters of the id,
+ * as in {@code ab/cdef...}, so no folder grows too large to be listed or searched quickly.
+ * <p>
+ * Older versions stored all objects directly in the object folder,
+ * such objects are still readable and can be moved into the subfolders.
+ */
+public class ShardedObjectManager<T> extends ObjectManager<T> {
+    private static final int SHARD_NAME_LENGTH = 2;
+
+    /**
+     * Create sharded object manager
+     * @param objectFolder the folder that contains the subfolders with objects
+     * @param codec the encoding of the stored objects
+     */
+    public ShardedObjectManager(File objectFolder, ObjectCodec<T> codec) {
+        super(objectFolder, codec);
+    }
+
+    /**
+     * Encode an object and save it to its subfolder
+     */
+    @Override
+    public void save(String id, T object) {
+        File shardFolder = getShardFile(id).getParentFile();
+        if (!shardFolder.exists() && !shardFolder.mkdir())
+            throw new GitLikeException("Unable to create folder " + shardFolder.getAbsolutePath());
+        super.save(id, object);
+    }
+
+    /**
+     * Get the ids of all objects in lexicographic order, listing one subfolder at a time
+     */
+    @Override
+    public List<String> getAllFileNames() {
+        return getLooseFileNames();
+    }
+
+    /**
+     * Get the ids of objects that start with the prefix in lexicographic order, at most limit ids.
+     * Only one subfolder is listed when the prefix has at least two characters.
+     */
+    public List<String> getFileNamesStartingWith(String prefix, int limit) {
+        List<String> candidates;
+        if (prefix.length() < SHARD_NAME_LENGTH) {
+            candidates = getLooseFileNames();
+            if (candidates == null)
+                candidates = new ArrayList<>();
+        } else {
+            candidates = getShardFileNames(prefix.substring(0, SHARD_NAME_LENGTH));
+            candidates.addAll(getFlatFileNames());
+        }
+
+        TreeSet<String> ids = new TreeSet<>();
+        for (String id: candidates) {
+            if (id.startsWith(prefix))
+                ids.add(id);
+        }
+        List<String> result = new ArrayList<>(ids);
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Move objects stored directly in the object folder by older versions into the subfolders.
+     * Returns the number of moved objects.
+     */
+    public int shardFlatObjects() {
+        int count = 0;
+        for (String id: getFlatFileNames()) {
+            File file = new File(objectFolder, id);
+            File shardFile = getShardFile(id);
+            File shardFolder = shardFile.getParentFile();
+            if (!shardFolder.exists() && !shardFolder.mkdir())
+                throw new GitLikeException("Unable to create folder " + shardFolder.getAbsolutePath());
+            if (!file.renameTo(shardFile))
+                throw new GitLikeException("Unable to move file " + file.getAbsolutePath());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Delete subfolders that no longer contain objects
+     */
+    protected void deleteEmptyShards() {
+        String[] shards = objectFolder.list((dir, name) -> isShardName(name));
+        if (shards == null)
+            return;
+        for (String shard: shards) {
+            File shardFolder = new File(objectFolder, shard);
+            String[] files = shardFolder.list();
+            if (files != null && files.length == 0)
+                shardFolder.delete();
+        }
+    }
+
+    /**
+     * Get the file of an object in its subfolder,
+     * or the file in the object folder if the object was stored there by an older version
+     */
+    @Override
+    protected File getFile(String id) {
+        if (!PackFile.isObjectId(id))
+            return new File(objectFolder, id);
+
+        File shardFile = getShardFile(id);
+        if (shardFile.exists())
+            return shardFile;
+
+        File flatFile = new File(objectFolder, id);
+        if (flatFile.exists())
+            return flatFile;
+        return shardFile;
+    }
+
+    private File getShardFile(String id) {
+        if (!PackFile.isObjectId(id))
+            throw new GitLikeException("Incorrect object id " + id + ".");
+        File shardFolder = new File(objectFolder, id.substring(0, SHARD_NAME_LENGTH));
+        return new File(shardFolder, id.substring(SHARD_NAME_LENGTH));
+    }
+
+    private List<String> getLooseFileNames() {
+        String[] shards = objectFolder.list((dir, name) -> isShardName(name));
+        if (shards == null)
+            return null;
+        Arrays.sort(shards);
+
+        List<String> ids = new ArrayList<>();
+        for (String shard: shards) {
+            ids.addAll(getShardFileNames(shard));
+        }
+
+        List<String> flatIds = getFlatFileNames();
+        if (flatIds.isEmpty())
+            return ids;
+
+        TreeSet<String> allIds = new TreeSet<>(ids);
+        allIds.addAll(flatIds);
+        return new ArrayList<>(allIds);
+    }
+
+    private List<String> getShardFileNames(String shard) {
+        List<String> ids = new ArrayList<>();
+        List<String> files = Utils.plainFilenamesIn(new File(objectFolder, shard));
+        if (files == null)
+            return ids;
+        for (String file: files) {
+            if (PackFile.isObjectId(shard + file))
+                ids.add(shard + file);
+        }
+        return ids;
+    }
+
+    private List<String> getFlatFileNames() {
+        List<String> ids = new ArrayList<>();
+        List<String> files = Utils.plainFilenamesIn(objectFolder);
+        if (files == null)
+            return ids;
+        for (String file: files) {
+            if (PackFile.isObjectId(file))
+                ids.add(file);
+        }
+        return ids;
+    }
+
+    private static boolean isShardName(String name) {
+        if (name.length() != SHARD_NAME_LENGTH)
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0 || Character.isUpperCase(name.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+}
@@ -1,118 +1,266 @@
 package gitlike.manager;
 
+import gitlike.GitLikeException;
 import gitlike.Initializable;
+import gitlike.codec.BlobCodec;
+import gitlike.codec.FileMapCodec;
+import gitlike.codec.StringCodec;
 import gitlike.object.Blob;
+import gitlike.object.FileStat;
+import gitlike.object.IndexEntry;
 
 import java.io.File;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * Class that gives access to control the stage area.
+ * <p>
+ * The stage area is kept in the index file, which also caches the blob ids of working files with
+ * their stat data, so files whose stat data did not change are not hashed again.
+ * Repositories created by older versions keep the stage area in folders with one file per staged file,
+ * it is moved to the index file when the stage area is first changed.
  */
 public class StageManager implements Initializable {
+    private static final String INDEX_FILE_NAME = "index";
+
     private static final String STAGE_FOLDER_NAME = "staged";
     private static final String ADDED_FOLDER_NAME = "added";
     private static final String REMOVED_FOLDER_NAME = "removed";
+    private static final String STORED_FOLDER_NAME = "stored";
+    private static final String ADDITIONS_FILE_NAME = "additions";
+
+    private final IndexFile indexFile;
+    private SortedMap<String, IndexEntry> entries;
 
+    /**
+     * Stage area of older versions: addition files with a copy of their content, removal files,
+     * addition files whose content was already stored, and blob ids of addition files in one file
+     */
+    private final File stageFolder;
     private final ObjectManager<Blob> addedObjectsManager;
     private final ObjectManager<String> removedObjectsManager;
+    private final ObjectManager<String> storedObjectsManager;
+    private final ObjectManager<SortedMap<String, String>> additionsManager;
+
+    private final BlobManager blobManager;
 
     /**
      * Create a stage manager
+     * @param repositoryFolder repository folder
+     * @param blobManager stores the content of addition files staged by older versions
      */
-    public StageManager(File repositoryFolder) {
-        File stageFolder = new File(repositoryFolder, STAGE_FOLDER_NAME);
-        addedObjectsManager = new ObjectManager<>(new File(stageFolder, ADDED_FOLDER_NAME));
-        removedObjectsManager = new ObjectManager<>(new File(stageFolder, REMOVED_FOLDER_NAME));
+    public StageManager(File repositoryFolder, BlobManager blobManager) {
+        indexFile = new IndexFile(new File(repositoryFolder, INDEX_FILE_NAME));
+        stageFolder = new File(repositoryFolder, STAGE_FOLDER_NAME);
+        addedObjectsManager = new ObjectManager<>(new File(stageFolder, ADDED_FOLDER_NAME), new BlobCodec());
+        removedObjectsManager = new ObjectManager<>(new File(stageFolder, REMOVED_FOLDER_NAME), new StringCodec());
+        storedObjectsManager = new ObjectManager<>(new File(stageFolder, STORED_FOLDER_NAME), new StringCodec());
+        additionsManager = new ObjectManager<>(stageFolder, new FileMapCodec());
+        this.blobManager = blobManager;
     }
 
     /**
-     * Staging the file for addition
+     * Get the blob id of a working file from the index if the stat data of the file did not change
+     * since the blob id was computed, otherwise return null and the file should be hashed
      */
-    public void addAdditionFile(String fileName, String content) {
-        addedObjectsManager.save(fileName, new Blob(fileName, content));
+    public String getCachedBlobId(String fileName, FileStat stat) {
+        IndexEntry entry = getEntries().get(fileName);
+        if (entry == null || entry.getStat() == null || !entry.getStat().equals(stat))
+            return null;
+        if (stat.getModifiedTime() >= indexFile.getModifiedTime())
+            return null;
+        return entry.getBlobId();
     }
 
     /**
-     * Staging the file for removal
+     * Get all entries of the index by path
      */
-    public void addRemovalFile(String fileName) {
-        removedObjectsManager.save(fileName, "");
+    public SortedMap<String, IndexEntry> getAllEntries() {
+        return Collections.unmodifiableSortedMap(getEntries());
     }
 
     /**
-     * Remove addition file from staging area
+     * Put entries into the index, replacing the entries with the same paths, and write the index once.
+     * The content of added entries should already be stored in the repository.
      */
-    public void removeAdditionFile(String fileName) {
-        addedObjectsManager.delete(fileName);
+    public void update(Collection<IndexEntry> newEntries) {
+        SortedMap<String, IndexEntry> updated = new TreeMap<>(getEntries());
+        for (IndexEntry entry: newEntries) {
+            updated.put(entry.getPath(), entry);
+        }
+        save(updated);
     }
 
     /**
-     * Remove removal file from staging area
+     * Staging the file for removal
      */
-    public void removeRemovalFile(String fileName) {
-        removedObjectsManager.delete(fileName);
+    public void addRemovalFile(String fileName) {
+        update(Collections.singleton(new IndexEntry(fileName, null, IndexEntry.State.REMOVED, null)));
     }
 
     /**
-     * Get the blob that match the addition file from staging area
+     * Remove addition file from staging area, the blob id of the working file stays cached
      */
-    public Blob getAdditionBlob(String fileName) {
-        return addedObjectsManager.get(fileName, Blob.class);
+    public void removeAdditionFile(String fileName) {
+        if (!containAdditionFile(fileName))
+            return;
+        update(Collections.singleton(getEntries().get(fileName).withState(IndexEntry.State.CACHED)));
     }
 
     /**
-     * Get a set of blobs that match all additional files in the staging area
+     * Get blob ids of all addition files in the staging area by file name
      */
-    public Set<Blob> getAllAdditionBlobs() {
-        return new HashSet<>(addedObjectsManager.getAll(Blob.class));
+    public SortedMap<String, String> getAllAdditionBlobIds() {
+        SortedMap<String, String> blobIds = new TreeMap<>();
+        for (IndexEntry entry: getEntries().values()) {
+            if (entry.getState() == IndexEntry.State.ADDED)
+                blobIds.put(entry.getPath(), entry.getBlobId());
+        }
+        return blobIds;
     }
 
     /**
-     * Get a list of the names of all addition files in the staging area
+     * Get a list of the names of all addition files in the staging area in lexicographic order
      */
     public List<String> getAllAdditionFiles() {
-        return addedObjectsManager.getAllFileNames();
+        return getFileNames(IndexEntry.State.ADDED);
     }
 
     /**
-     * Get a list of the names of all removal files in the staging area
+     * Get a list of the names of all removal files in the staging area in lexicographic order
      */
     public List<String> getAllRemovalFiles() {
-        return removedObjectsManager.getAllFileNames();
+        return getFileNames(IndexEntry.State.REMOVED);
     }
 
     /**
      * Check that the staging area contains an addition file
      */
     public boolean containAdditionFile(String fileName) {
-        return addedObjectsManager.contains(fileName);
+        IndexEntry entry = getEntries().get(fileName);
+        return entry != null && entry.getState() == IndexEntry.State.ADDED;
     }
 
     /**
      * Check that the staging area contains a removal file
      */
     public boolean containRemovalFile(String fileName) {
-        return removedObjectsManager.contains(fileName);
+        IndexEntry entry = getEntries().get(fileName);
+        return entry != null && entry.getState() == IndexEntry.State.REMOVED;
     }
 
     /**
-     * Clear the staging area
+     * Clear the staging area, cached blob ids of working files are kept
      */
     public void clear() {
-        addedObjectsManager.clear();
-        removedObjectsManager.clear();
+        clear(Collections.emptyMap());
+    }
+
+    /**
+     * Clear the staging area and replace the cached blob ids of working files that were written or deleted,
+     * the index is written once
+     * @param changedEntries new cached entries by path, null for deleted files
+     */
+    public void clear(Map<String, IndexEntry> changedEntries) {
+        SortedMap<String, IndexEntry> updated = new TreeMap<>();
+        for (IndexEntry entry: getEntries().values()) {
+            if (entry.getState() == IndexEntry.State.ADDED)
+                updated.put(entry.getPath(), entry.withState(IndexEntry.State.CACHED));
+            else if (entry.getState() == IndexEntry.State.CACHED)
+                updated.put(entry.getPath(), entry);
+        }
+        for (Map.Entry<String, IndexEntry> change: changedEntries.entrySet()) {
+            if (change.getValue() == null)
+                updated.remove(change.getKey());
+            else
+                updated.put(change.getKey(), change.getValue());
+        }
+        save(updated);
     }
 
     public void initialize() {
-        addedObjectsManager.initialize();
-        removedObjectsManager.initialize();
+        save(new TreeMap<>());
     }
 
     public boolean isInitialized() {
-        return addedObjectsManager.isInitialized() && removedObjectsManager.isInitialized();
+        return indexFile.exists() || addedObjectsManager.isInitialized() && removedObjectsManager.isInitialized();
     }
 
+    private List<String> getFileNames(IndexEntry.State state) {
+        List<String> fileNames = new ArrayList<>();
+        for (IndexEntry entry: getEntries().values()) {
+            if (entry.getState() == state)
+                fileNames.add(entry.getPath());
+        }
+        return fileNames;
+    }
+
+    private SortedMap<String, IndexEntry> getEntries() {
+        if (entries == null)
+            entries = indexFile.exists() ? indexFile.read() : readOlderStage();
+        return entries;
+    }
+
+    private void save(SortedMap<String, IndexEntry> newEntries) {
+        indexFile.write(newEntries.values());
+        entries = newEntries;
+        deleteOlderStage();
+    }
+
+    /**
+     * Read the stage area of older versions, the content of addition files is stored in the repository
+     */
+    private SortedMap<String, IndexEntry> readOlderStage() {
+        SortedMap<String, IndexEntry> olderEntries = new TreeMap<>();
+        SortedMap<String, String> additions = additionsManager.get(ADDITIONS_FILE_NAME);
+        if (additions != null) {
+            for (Map.Entry<String, String> addition: additions.entrySet()) {
+                olderEntries.put(addition.getKey(),
+                        new IndexEntry(addition.getKey(), addition.getValue(), IndexEntry.State.ADDED, null));
+            }
+        }
+        for (String fileName: getFileNames(storedObjectsManager)) {
+            olderEntries.put(fileName, new IndexEntry(fileName, storedObjectsManager.get(fileName),
+                    IndexEntry.State.ADDED, null));
+        }
+        for (String fileName: getFileNames(addedObjectsManager)) {
+            /* blobs of older versions may have ids computed from the file name, the id is computed again */
+            Blob blob = new Blob(fileName, addedObjectsManager.get(fileName).getContent());
+            blobManager.saveBlob(blob);
+            olderEntries.put(fileName, new IndexEntry(fileName, blob.getId(), IndexEntry.State.ADDED, null));
+        }
+        for (String fileName: getFileNames(removedObjectsManager)) {
+            olderEntries.put(fileName, new IndexEntry(fileName, null, IndexEntry.State.REMOVED, null));
+        }
+        return olderEntries;
+    }
+
+    private void deleteOlderStage() {
+        if (!stageFolder.exists())
+            return;
+        addedObjectsManager.clear();
+        removedObjectsManager.clear();
+        storedObjectsManager.clear();
+        additionsManager.delete(ADDITIONS_FILE_NAME);
+        for (String folderName: new String[] {ADDED_FOLDER_NAME, REMOVED_FOLDER_NAME, STORED_FOLDER_NAME}) {
+            deleteFolder(new File(stageFolder, folderName));
+        }
+        deleteFolder(stageFolder);
+    }
+
+    private static void deleteFolder(File folder) {
+        if (folder.exists() && !folder.delete())
+            throw new GitLikeException("Unable to delete folder " + folder.getAbsolutePath());
+    }
+
+    private static List<String> getFileNames(ObjectManager<?> objectManager) {
+        List<String> fileNames = objectManager.getAllFileNames();
+        return fileNames != null ? fileNames : Collections.emptyList();
+    }
 }
@@ -0,0 +1,157 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.object.Commit;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * All commits of the commit graph, the most recent first, read in parallel ahead of the consumer.
+ * <p>
+ * The order is computed from the timestamps in the graph without reading commits. Graph positions are
+ * split into runs of 65536, each run is sorted by a key that packs the timestamp with the offset in the run,
+ * and the runs are merged, so the order takes 8 bytes per commit.
+ * Commits are read in batches by a fixed pool of threads, at most a fixed window of batches is read ahead,
+ * so memory does not grow with the number of commits.
+ * Commits with the same timestamp are returned in reverse order of addition to the graph.
+ * <p>
+ * The iterator should be closed to stop the reading threads.
+ */
+public class TimestampOrderedCommits implements Iterator<Commit>, AutoCloseable {
+    private static final int RUN_BITS = 16;
+    private static final int RUN_SIZE = 1 << RUN_BITS;
+
+    /**
+     * Number of commits read by one task, and number of batches read ahead for each thread
+     */
+    private static final int BATCH_SIZE = 64;
+    private static final int BATCHES_PER_THREAD = 4;
+
+    private final IntFunction<Commit> reader;
+    private final ExecutorService executor;
+    private final int windowSize;
+    private final Deque<Future<Commit[]>> window = new ArrayDeque<>();
+    private Commit[] batch = new Commit[0];
+    private int batchIndex;
+
+    /**
+     * Keys of each run sorted in increasing order: timestamp, then the offset in the run
+     */
+    private final long[][] runs;
+
+    /**
+     * Runs that are not exhausted, by their next key, each element is a run index and an index in the run
+     */
+    private final PriorityQueue<int[]> merge;
+
+    /**
+     * Create iterator
+     * @param graph commit graph that contains all commits
+     * @param reader reads the commit at a graph position, called from several threads
+     * @param threadCount the number of reading threads
+     */
+    TimestampOrderedCommits(CommitGraph graph, IntFunction<Commit> reader, int threadCount) {
+        this.reader = reader;
+        int size = graph.size();
+        runs = new long[(size + RUN_SIZE - 1) / RUN_SIZE][];
+        merge = new PriorityQueue<>(Math.max(1, runs.length), (first, second) -> {
+            int comparison = Long.compare(runs[second[0]][second[1]] >> RUN_BITS,
+                    runs[first[0]][first[1]] >> RUN_BITS);
+            return comparison != 0 ? comparison : Integer.compare(second[0], first[0]);
+        });
+
+        for (int run = 0; run < runs.length; run++) {
+            int start = run * RUN_SIZE;
+            long[] keys = new long[Math.min(RUN_SIZE, size - start)];
+            for (int offset = 0; offset < keys.length; offset++) {
+                keys[offset] = graph.getTimestamp(start + offset) << RUN_BITS | offset;
+            }
+            Arrays.sort(keys);
+            runs[run] = keys;
+            merge.add(new int[] {run, keys.length - 1});
+        }
+
+        executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "commit-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        windowSize = threadCount * BATCHES_PER_THREAD;
+        fillWindow();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return batchIndex < batch.length || !window.isEmpty();
+    }
+
+    @Override
+    public Commit next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        if (batchIndex == batch.length) {
+            batch = takeBatch();
+            batchIndex = 0;
+        }
+        Commit commit = batch[batchIndex];
+        batch[batchIndex++] = null;
+        return commit;
+    }
+
+    /**
+     * Stop the reading threads, commits that were read ahead are dropped
+     */
+    @Override
+    public void close() {
+        window.clear();
+        executor.shutdownNow();
+    }
+
+    private Commit[] takeBatch() {
+        Future<Commit[]> future = window.poll();
+        fillWindow();
+
+        try {
+            return future.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new GitLikeException("Interrupted while reading commits.");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof GitLikeException)
+                throw (GitLikeException) excp.getCause();
+            throw new GitLikeException("Internal error decoding object.");
+        }
+    }
+
+    private void fillWindow() {
+        while (window.size() < windowSize && !merge.isEmpty()) {
+            int[] positions = new int[BATCH_SIZE];
+            int count = 0;
+            while (count < BATCH_SIZE && !merge.isEmpty()) {
+                int[] cursor = merge.poll();
+                positions[count++] = cursor[0] * RUN_SIZE + (int) (runs[cursor[0]][cursor[1]] & (RUN_SIZE - 1));
+                if (--cursor[1] >= 0)
+                    merge.add(cursor);
+            }
+
+            int batchSize = count;
+            window.add(executor.submit(() -> {
+                Commit[] commits = new Commit[batchSize];
+                for (int i = 0; i < batchSize; i++) {
+                    commits[i] = reader.apply(positions[i]);
+                }
+                return commits;
+            }));
+        }
+    }
+}
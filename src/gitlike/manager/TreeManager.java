@@ -0,0 +1,207 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.codec.CompressedCodec;
+import gitlike.codec.TreeCodec;
+import gitlike.object.Commit;
+import gitlike.object.Tree;
+import gitlike.object.TreeReader;
+
+import java.io.File;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Class that provides access to directory trees and manages trees at the file level.
+ * <p>
+ * A commit refers to the tree of the root directory. File paths use '/' between directory names.
+ * When files change, only the trees of the directories on the changed paths are written,
+ * all other trees are shared with the previous commit.
+ */
+public class TreeManager implements TreeReader {
+    private static final String TREE_FOLDER_NAME = "trees";
+    private static final char SEPARATOR = '/';
+
+    /**
+     * Size of the tree cache in bytes, and estimated sizes of a tree without entries and of an entry
+     */
+    private static final long CACHE_SIZE = 16 * 1024 * 1024;
+    private static final long TREE_WEIGHT = 128;
+    private static final long ENTRY_WEIGHT = 160;
+
+    private final ObjectCache<Tree> cache = new ObjectCache<>(CACHE_SIZE, TreeManager::weigh);
+    private final PackedObjectManager<Tree> objectManager;
+
+    /**
+     * Create tree manager
+     * @param repositoryFolder repository folder
+     * @param configManager settings that choose the compression of new trees
+     */
+    public TreeManager(File repositoryFolder, ConfigManager configManager) {
+        /* The tree pack is created with the first tree, so repositories of older versions have no tree folder */
+        objectManager = new PackedObjectManager<>(new File(repositoryFolder, TREE_FOLDER_NAME),
+                new CompressedCodec<>(new TreeCodec(), configManager::getCompression), cache);
+    }
+
+    /**
+     * Get tree by id, return null if no tree exist
+     */
+    public Tree getTree(String id) {
+        return objectManager.get(id);
+    }
+
+    /**
+     * Save tree with the files of a commit
+     * @param files blob ids by file path
+     * @return id of the root tree
+     */
+    public String saveFiles(SortedMap<String, String> files) {
+        return applyChanges(null, files);
+    }
+
+    /**
+     * Save the trees of the directories changed by the given file changes, unchanged trees are not written.
+     * Directories without files are removed.
+     * @param baseTreeId id of the root tree the changes apply to, null for an empty directory
+     * @param changes new blob ids by file path, null for removed files
+     * @return id of the new root tree
+     */
+    public String applyChanges(String baseTreeId, SortedMap<String, String> changes) {
+        Tree base = baseTreeId == null ? new Tree() : loadTree(baseTreeId);
+        SortedMap<String, String> blobIds = new TreeMap<>(base.getBlobIds());
+        SortedMap<String, String> treeIds = new TreeMap<>(base.getTreeIds());
+
+        Map<String, SortedMap<String, String>> subdirectoryChanges = new TreeMap<>();
+        for (Map.Entry<String, String> change: changes.entrySet()) {
+            String path = change.getKey();
+            int separator = path.indexOf(SEPARATOR);
+            if (separator < 0) {
+                if (change.getValue() == null)
+                    blobIds.remove(path);
+                else
+                    blobIds.put(path, change.getValue());
+            } else {
+                subdirectoryChanges.computeIfAbsent(path.substring(0, separator), name -> new TreeMap<>())
+                        .put(path.substring(separator + 1), change.getValue());
+            }
+        }
+
+        for (Map.Entry<String, SortedMap<String, String>> entry: subdirectoryChanges.entrySet()) {
+            String name = entry.getKey();
+            String treeId = applyChanges(treeIds.get(name), entry.getValue());
+            if (loadTree(treeId).isEmpty())
+                treeIds.remove(name);
+            else
+                treeIds.put(name, treeId);
+        }
+
+        Tree tree = new Tree(blobIds, treeIds);
+        objectManager.save(tree.getId(), tree);
+        return tree.getId();
+    }
+
+    /**
+     * Get blob ids of all files under a tree by file path
+     */
+    @Override
+    public SortedMap<String, String> getFiles(String treeId) {
+        SortedMap<String, String> files = new TreeMap<>();
+        addFiles(loadTree(treeId), "", files);
+        return files;
+    }
+
+    /**
+     * Get the blob id of one file, only the trees on its path are read
+     * @return blob id, null if there is no such file
+     */
+    @Override
+    public String getBlobId(String treeId, String path) {
+        Tree tree = loadTree(treeId);
+        int start = 0;
+        for (int separator = path.indexOf(SEPARATOR); separator >= 0; separator = path.indexOf(SEPARATOR, start)) {
+            String subtreeId = tree.getTreeIds().get(path.substring(start, separator));
+            if (subtreeId == null)
+                return null;
+            tree = loadTree(subtreeId);
+            start = separator + 1;
+        }
+        return tree.getBlobIds().get(path.substring(start));
+    }
+
+    /**
+     * Get the id of the root tree of a commit.
+     * Commits written by older versions store their files directly, a tree is saved for them.
+     */
+    public String getTreeId(Commit commit) {
+        if (commit.getTreeId() != null)
+            return commit.getTreeId();
+        return saveFiles(commit.getBlobIds());
+    }
+
+    /**
+     * Get files that were added, removed or changed from one tree to another: their blob ids in the other tree
+     * by file path, null for removed files. Subtrees with the same id are equal and are not read.
+     */
+    public SortedMap<String, String> getChanges(String treeId, String anotherTreeId) {
+        SortedMap<String, String> changes = new TreeMap<>();
+        addChanges(treeId, anotherTreeId, "", changes);
+        return changes;
+    }
+
+    /**
+     * Get the cache of decoded trees, which counts hits and misses
+     */
+    public ObjectCache<Tree> getCache() {
+        return cache;
+    }
+
+    private void addChanges(String treeId, String anotherTreeId, String prefix, SortedMap<String, String> changes) {
+        if (treeId != null && treeId.equals(anotherTreeId))
+            return;
+        Tree tree = treeId == null ? new Tree() : loadTree(treeId);
+        Tree another = anotherTreeId == null ? new Tree() : loadTree(anotherTreeId);
+
+        for (Map.Entry<String, String> entry: tree.getBlobIds().entrySet()) {
+            String anotherBlobId = another.getBlobIds().get(entry.getKey());
+            if (!entry.getValue().equals(anotherBlobId))
+                changes.put(prefix + entry.getKey(), anotherBlobId);
+        }
+        for (Map.Entry<String, String> entry: another.getBlobIds().entrySet()) {
+            if (!tree.getBlobIds().containsKey(entry.getKey()))
+                changes.put(prefix + entry.getKey(), entry.getValue());
+        }
+
+        SortedSet<String> names = new TreeSet<>(tree.getTreeIds().keySet());
+        names.addAll(another.getTreeIds().keySet());
+        for (String name: names) {
+            addChanges(tree.getTreeIds().get(name), another.getTreeIds().get(name), prefix + name + SEPARATOR,
+                    changes);
+        }
+    }
+
+    private void addFiles(Tree tree, String prefix, SortedMap<String, String> files) {
+        for (Map.Entry<String, String> entry: tree.getBlobIds().entrySet()) {
+            files.put(prefix + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry: tree.getTreeIds().entrySet()) {
+            addFiles(loadTree(entry.getValue()), prefix + entry.getKey() + SEPARATOR, files);
+        }
+    }
+
+    private Tree loadTree(String id) {
+        Tree tree = objectManager.get(id);
+        if (tree == null)
+            throw new GitLikeException("Missing tree " + id + ".");
+        return tree;
+    }
+
+    /**
+     * Estimate the size of a decoded tree in memory
+     */
+    private static long weigh(Tree tree) {
+        return TREE_WEIGHT + (tree.getBlobIds().size() + tree.getTreeIds().size()) * ENTRY_WEIGHT;
+    }
+}
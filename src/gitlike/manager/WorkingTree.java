@@ -0,0 +1,437 @@
+package gitlike.manager;
+
+import gitlike.GitLikeException;
+import gitlike.object.Blob;
+import gitlike.object.ByteContent;
+import gitlike.object.FileContent;
+import gitlike.object.FileStat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.BiConsumer;
+
+/**
+ * Class that gives access to the files of the working folder.
+ * Paths of working files are relative to the working folder and use '/' between names,
+ * the repository folder and ignored files are skipped when folders are walked.
+ */
+public class WorkingTree {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * Number of files hashed or written by one task, and number of tasks queued ahead for each thread.
+     * Files are streamed through a fixed-size buffer, so memory does not grow with file sizes.
+     */
+    private static final int BATCH_SIZE = 32;
+    private static final int BATCHES_PER_THREAD = 4;
+
+    /**
+     * Size up to which a file read into a blob is held in memory
+     */
+    private static final long IN_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    private final File workingFolder;
+    private final File repositoryFolder;
+    private IgnoreRules ignoreRules;
+
+    /**
+     * Create working tree
+     * @param workingFolder the folder with the working files
+     * @param repositoryFolder the repository folder inside the working folder, which is never walked
+     */
+    public WorkingTree(File workingFolder, File repositoryFolder) {
+        this.workingFolder = workingFolder;
+        this.repositoryFolder = repositoryFolder;
+    }
+
+    /**
+     * Get the working file at a path
+     */
+    public File getFile(String path) {
+        return new File(workingFolder, path);
+    }
+
+    /**
+     * Delete the working file at a path and the folders on the path that become empty,
+     * the working folder itself is kept, and so is a folder at the path
+     */
+    public void deleteFile(String path) {
+        FileStat stat = FileStat.read(getFile(path));
+        if (stat == null || stat.isDirectory())
+            return;
+        getFile(path).delete();
+        /* deleting a folder that still has files fails, which ends the walk */
+        for (int end = path.lastIndexOf('/'); end > 0; end = path.lastIndexOf('/', end - 1)) {
+            File folder = getFile(path.substring(0, end));
+            if (!folder.isDirectory() || !folder.delete())
+                break;
+        }
+    }
+
+    /**
+     * Get paths of all entries under a folder that are not folders, in lexicographic order.
+     * Unlike the other walks, ignored files and files that are not regular files are included.
+     */
+    public SortedSet<String> getAllPaths(String folder) {
+        SortedSet<String> paths = new TreeSet<>();
+        addAllPaths(getFile(folder), folder + "/", paths);
+        return paths;
+    }
+
+    /**
+     * Get the rules of the ignore file, the file is read once
+     */
+    public IgnoreRules getIgnoreRules() {
+        if (ignoreRules == null)
+            ignoreRules = IgnoreRules.load(workingFolder);
+        return ignoreRules;
+    }
+
+    /**
+     * Get paths of the working files selected by a pathspec, in lexicographic order.
+     * The pathspec is a file, a folder whose files are selected recursively, "." for all files,
+     * or a glob pattern. A pattern without '/' matches file names at any depth,
+     * other patterns match paths from the working folder.
+     * Ignored files are selected only when they are given by name.
+     */
+    public SortedSet<String> getFiles(String pathspec) {
+        String path = normalize(pathspec);
+        SortedSet<String> files = new TreeSet<>();
+
+        int globIndex = indexOfGlob(path);
+        if (globIndex >= 0) {
+            boolean isPathPattern = path.contains("/");
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path);
+            String folder = path.substring(0, Math.max(0, path.lastIndexOf('/', globIndex)));
+            walk(folder, (file, stat) -> {
+                if (matcher.matches(Paths.get(isPathPattern ? file : file.substring(file.lastIndexOf('/') + 1))))
+                    files.add(file);
+            });
+        } else if (path.isEmpty() || getFile(path).isDirectory()) {
+            walk(path, (file, stat) -> files.add(file));
+        } else if (getFile(path).isFile()) {
+            files.add(path);
+        }
+        return files;
+    }
+
+    /**
+     * Get the stat data of all working files that are not ignored by path
+     */
+    public SortedMap<String, FileStat> getAllFiles() {
+        SortedMap<String, FileStat> files = new TreeMap<>();
+        walk("", files::put);
+        return files;
+    }
+
+    /**
+     * Get the stat data of the working files at changed paths, changed folders are walked.
+     * Paths that do not exist are skipped, as are ignored files and files in ignored folders.
+     */
+    public SortedMap<String, FileStat> getChangedFiles(Collection<String> paths) {
+        SortedMap<String, FileStat> files = new TreeMap<>();
+        IgnoreRules rules = getIgnoreRules();
+        String walkedFolder = null;
+        for (String path: new TreeSet<>(paths)) {
+            if (walkedFolder != null && path.startsWith(walkedFolder + "/") || isInIgnoredFolder(path))
+                continue;
+            FileStat stat = FileStat.read(getFile(path));
+            if (stat == null)
+                continue;
+            if (stat.isDirectory()) {
+                if (!rules.isIgnored(path, true)) {
+                    walk(path, files::put);
+                    walkedFolder = path;
+                }
+            } else if (stat.isRegularFile() && !rules.isIgnored(path, false)) {
+                files.put(path, stat);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Check if a pathspec selects all working files
+     */
+    public boolean isWholeTree(String pathspec) {
+        return normalize(pathspec).isEmpty();
+    }
+
+    /**
+     * Compute blob ids of working files in parallel by a fixed pool of threads.
+     * At most a fixed number of files are hashed ahead of the consumer, which gets the results
+     * on the calling thread in the order of the paths.
+     * @param consumer gets the path and the blob id of each file
+     *
+     * @throws GitLikeException if a file cannot be read
+     */
+    public void hashFiles(List<String> paths, BiConsumer<String, String> consumer) {
+        readFiles(paths, path -> new Blob(path, new FileContent(getFile(path))).getId(), consumer);
+    }
+
+    /**
+     * Read working files into blobs in parallel by a fixed pool of threads, and process each blob
+     * on the thread that read it, for example to store it.
+     * Each file is read once and its blob id is computed from the bytes the blob holds, so a file that
+     * changes while it is read cannot be stored under an id that does not match its content.
+     * Small files are held in memory, larger files are copied to a temporary file in the repository folder,
+     * which is deleted after the blob is processed.
+     * @param processor gets the blob of each file, called from several threads
+     * @param consumer gets the path and the result of the processor on the calling thread in the order of the paths
+     *
+     * @throws GitLikeException if a file cannot be read
+     */
+    public <R> void readBlobs(List<String> paths, Function<Blob, R> processor, BiConsumer<String, R> consumer) {
+        readFiles(paths, path -> {
+            File file = getFile(path);
+            if (file.length() <= IN_MEMORY_LIMIT)
+                return processor.apply(new Blob(path, new ByteContent(readContent(file))));
+
+            File snapshot = createSnapshot(file);
+            try {
+                return processor.apply(new Blob(path, new FileContent(snapshot)));
+            } finally {
+                snapshot.delete();
+            }
+        }, consumer);
+    }
+
+    /**
+     * Write blobs to working files in parallel by a fixed pool of threads, missing folders are created.
+     * Files are written in batches in the order of the paths, at most a fixed number of batches ahead
+     * of the calling thread. When a file cannot be written, batches that were not started are dropped,
+     * and the error of the first failing file in path order is thrown once the started batches are written.
+     * @param blobIds blob ids by path
+     * @param blobReader reads the blob of a path and a blob id, called from several threads
+     * @param threadCount the number of writing threads
+     *
+     * @throws GitLikeException if a blob is missing or a file cannot be written
+     */
+    public void writeFiles(SortedMap<String, String> blobIds, BiFunction<String, String, Blob> blobReader,
+                           int threadCount) {
+        List<Map.Entry<String, String>> files = new ArrayList<>(blobIds.entrySet());
+        int windowSize = threadCount * BATCHES_PER_THREAD;
+        ExecutorService executor = createExecutor("file-writer", threadCount);
+
+        Deque<Future<?>> window = new ArrayDeque<>();
+        try {
+            int submitted = 0;
+            while (submitted < files.size() || !window.isEmpty()) {
+                while (window.size() < windowSize && submitted < files.size()) {
+                    List<Map.Entry<String, String>> batch =
+                            files.subList(submitted, Math.min(submitted + BATCH_SIZE, files.size()));
+                    window.add(executor.submit(() -> write(batch, blobReader)));
+                    submitted += batch.size();
+                }
+                takeBatch(window.poll(), "Interrupted while writing files.", "Unable to write working files.");
+            }
+        } finally {
+            /* started batches are not interrupted, an interrupted write would leave its file truncated */
+            for (Future<?> future: window) {
+                future.cancel(false);
+            }
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+    }
+
+    /**
+     * Run the reader on each path by a fixed pool of threads, at most a fixed number of batches ahead
+     * of the consumer, which gets the results on the calling thread in the order of the paths
+     */
+    private <R> void readFiles(List<String> paths, Function<String, R> reader, BiConsumer<String, R> consumer) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int windowSize = threadCount * BATCHES_PER_THREAD;
+        ExecutorService executor = createExecutor("file-reader", threadCount);
+
+        try {
+            Deque<Future<List<R>>> window = new ArrayDeque<>();
+            int submitted = 0;
+            int consumed = 0;
+            while (consumed < paths.size()) {
+                while (window.size() < windowSize && submitted < paths.size()) {
+                    List<String> batch = paths.subList(submitted, Math.min(submitted + BATCH_SIZE, paths.size()));
+                    window.add(executor.submit(() -> {
+                        List<R> results = new ArrayList<>(batch.size());
+                        for (String path: batch) {
+                            results.add(reader.apply(path));
+                        }
+                        return results;
+                    }));
+                    submitted += batch.size();
+                }
+
+                for (R result: takeBatch(window.poll(), "Interrupted while reading files.",
+                        "Unable to read working files.")) {
+                    consumer.accept(paths.get(consumed++), result);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] readContent(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read file " + file.getPath());
+        }
+    }
+
+    /**
+     * Copy a working file to a temporary file in the repository folder
+     */
+    private File createSnapshot(File file) {
+        try {
+            File snapshot = File.createTempFile("snapshot", ".tmp", repositoryFolder);
+            Files.copy(file.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return snapshot;
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read file " + file.getPath());
+        }
+    }
+
+    private Void write(List<Map.Entry<String, String>> files, BiFunction<String, String, Blob> blobReader) {
+        for (Map.Entry<String, String> file: files) {
+            Blob blob = blobReader.apply(file.getKey(), file.getValue());
+            if (blob == null)
+                throw new GitLikeException("Missing blob " + file.getValue() + ".");
+            blob.writeTo(getFile(file.getKey()));
+        }
+        return null;
+    }
+
+    private static ExecutorService createExecutor(String threadName, int threadCount) {
+        return Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static <T> T takeBatch(Future<T> future, String interruptedMessage, String errorMessage) {
+        try {
+            return future.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new GitLikeException(interruptedMessage);
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof GitLikeException)
+                throw (GitLikeException) excp.getCause();
+            throw new GitLikeException(errorMessage);
+        }
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Walk the files under a folder that are not ignored, each file and folder is read once
+     * @param folder path of the folder, empty for the working folder
+     * @param consumer gets the path and the stat data of each regular file
+     */
+    private void walk(String folder, BiConsumer<String, FileStat> consumer) {
+        File start = folder.isEmpty() ? workingFolder : getFile(folder);
+        FileStat stat = FileStat.read(start);
+        if (stat == null || !stat.isDirectory())
+            return;
+        walk(start, folder.isEmpty() ? "" : folder + "/", getIgnoreRules(),
+                repositoryFolder.getAbsoluteFile().toPath().normalize(), consumer);
+    }
+
+    private void walk(File folder, String prefix, IgnoreRules rules, Path repositoryPath,
+                      BiConsumer<String, FileStat> consumer) {
+        String[] names = folder.list();
+        if (names == null)
+            throw new GitLikeException("Unable to read folder " + folder.getAbsolutePath());
+
+        for (String name: names) {
+            File file = new File(folder, name);
+            String path = prefix + name;
+            FileStat stat = FileStat.read(file);
+            if (stat == null)
+                continue;
+            if (stat.isDirectory()) {
+                if (!rules.isIgnored(path, true)
+                        && !file.getAbsoluteFile().toPath().normalize().equals(repositoryPath))
+                    walk(file, path + "/", rules, repositoryPath, consumer);
+            } else if (stat.isRegularFile() && !rules.isIgnored(path, false)) {
+                consumer.accept(path, stat);
+            }
+        }
+    }
+
+    private static void addAllPaths(File folder, String prefix, SortedSet<String> paths) {
+        String[] names = folder.list();
+        if (names == null)
+            throw new GitLikeException("Unable to read folder " + folder.getAbsolutePath());
+
+        for (String name: names) {
+            File file = new File(folder, name);
+            FileStat stat = FileStat.read(file);
+            if (stat != null && stat.isDirectory())
+                addAllPaths(file, prefix + name + "/", paths);
+            else if (stat != null)
+                paths.add(prefix + name);
+        }
+    }
+
+    private boolean isInIgnoredFolder(String path) {
+        for (int separator = path.indexOf('/'); separator >= 0; separator = path.indexOf('/', separator + 1)) {
+            if (getIgnoreRules().isIgnored(path.substring(0, separator), true))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove "./" prefixes, duplicated and trailing '/' of a pathspec, "." becomes empty
+     */
+    private static String normalize(String pathspec) {
+        String path = pathspec.replace(File.separatorChar, '/').replaceAll("/+", "/");
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        if (path.endsWith("/"))
+            path = path.substring(0, path.length() - 1);
+        return path.equals(".") ? "" : path;
+    }
+
+    private static int indexOfGlob(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(path.charAt(i)) >= 0)
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,138 @@
+package gitlike.manager;
+
+import gitlike.object.Commit;
+import gitlike.object.FileStat;
+import gitlike.object.IndexEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Changes of the working files that are not staged, and working files that are not tracked.
+ * <p>
+ * A working file is expected to have the content staged for addition, otherwise the content
+ * of the current commit unless it is staged for removal. Its content is compared by stat data first,
+ * only files whose stat data differs from the index are hashed, in parallel, and the index
+ * is refreshed with their new stat data, so the next status does not hash them again.
+ * Ignored folders are not walked, tracked files in them are read directly.
+ * <p>
+ * While the file monitor runs, only the paths it reports as changed are read, other files are taken to
+ * match their index entries. Files that do not match the index are reported to the monitor,
+ * so the next status reads them again.
+ */
+public class WorkingTreeStatus {
+    public static final String MODIFIED = "modified";
+    public static final String DELETED = "deleted";
+
+    private final SortedMap<String, String> unstagedChanges = new TreeMap<>();
+    private final SortedSet<String> untrackedFiles = new TreeSet<>();
+
+    private WorkingTreeStatus() {
+    }
+
+    /**
+     * Compare the working files with the staging area and the current commit
+     */
+    public static WorkingTreeStatus scan(Commit currentCommit, StageManager stageManager, BlobManager blobManager,
+                                         WorkingTree workingTree, FileMonitor fileMonitor) {
+        WorkingTreeStatus status = new WorkingTreeStatus();
+        SortedMap<String, IndexEntry> entries = stageManager.getAllEntries();
+
+        SortedMap<String, String> expectedBlobIds = new TreeMap<>(currentCommit.getBlobIds());
+        for (IndexEntry entry: entries.values()) {
+            if (entry.getState() == IndexEntry.State.ADDED)
+                expectedBlobIds.put(entry.getPath(), entry.getBlobId());
+            else if (entry.getState() == IndexEntry.State.REMOVED)
+                expectedBlobIds.remove(entry.getPath());
+        }
+
+        Set<String> changedPaths = fileMonitor.getChangedPaths();
+        SortedMap<String, FileStat> files = changedPaths == null ? workingTree.getAllFiles()
+                : workingTree.getChangedFiles(changedPaths);
+        for (String fileName: files.keySet()) {
+            if (!expectedBlobIds.containsKey(fileName))
+                status.untrackedFiles.add(fileName);
+        }
+
+        List<String> suspectFileNames = new ArrayList<>();
+        Map<String, FileStat> suspectStats = new HashMap<>();
+        for (Map.Entry<String, String> expected: expectedBlobIds.entrySet()) {
+            String fileName = expected.getKey();
+            FileStat stat = files.get(fileName);
+            IndexEntry entry = entries.get(fileName);
+            if (stat == null && changedPaths != null && !FileMonitor.isChanged(changedPaths, fileName)
+                    && entry != null && entry.getBlobId() != null) {
+                if (!entry.getBlobId().equals(expected.getValue()))
+                    status.unstagedChanges.put(fileName, MODIFIED);
+                continue;
+            }
+
+            if (stat == null)
+                stat = FileStat.read(workingTree.getFile(fileName));
+            if (stat == null || !stat.isRegularFile()) {
+                status.unstagedChanges.put(fileName, DELETED);
+                continue;
+            }
+
+            String blobId = stageManager.getCachedBlobId(fileName, stat);
+            if (blobId == null) {
+                suspectFileNames.add(fileName);
+                suspectStats.put(fileName, stat);
+            } else if (!blobId.equals(expected.getValue())) {
+                status.unstagedChanges.put(fileName, MODIFIED);
+            }
+        }
+
+        List<IndexEntry> refreshedEntries = new ArrayList<>();
+        workingTree.hashFiles(suspectFileNames, (fileName, hashedBlobId) -> {
+            String blobId = hashedBlobId;
+            String expectedBlobId = expectedBlobIds.get(fileName);
+            if (!blobId.equals(expectedBlobId)) {
+                if (blobManager.isOlderBlobOf(expectedBlobId, workingTree.getFile(fileName)))
+                    blobId = expectedBlobId;
+                else
+                    status.unstagedChanges.put(fileName, MODIFIED);
+            }
+
+            /* the blob id of a staged file is kept, its stat data is refreshed only if the content is the same */
+            IndexEntry entry = entries.get(fileName);
+            FileStat stat = suspectStats.get(fileName);
+            if (entry == null || entry.getState() == IndexEntry.State.CACHED)
+                refreshedEntries.add(new IndexEntry(fileName, blobId, IndexEntry.State.CACHED, stat));
+            else if (entry.getBlobId().equals(blobId))
+                refreshedEntries.add(new IndexEntry(fileName, blobId, entry.getState(), stat));
+        });
+        if (!refreshedEntries.isEmpty())
+            stageManager.update(refreshedEntries);
+
+        Set<String> unmatchedPaths = new HashSet<>(status.unstagedChanges.keySet());
+        unmatchedPaths.addAll(status.untrackedFiles);
+        fileMonitor.update(unmatchedPaths);
+
+        return status;
+    }
+
+    /**
+     * Get changes that are not staged by file name, either {@link #MODIFIED} or {@link #DELETED}
+     */
+    public SortedMap<String, String> getUnstagedChanges() {
+        return Collections.unmodifiableSortedMap(unstagedChanges);
+    }
+
+    /**
+     * Get working files that are neither tracked nor staged for addition, including files staged for removal
+     */
+    public SortedSet<String> getUntrackedFiles() {
+        return Collections.unmodifiableSortedSet(untrackedFiles);
+    }
+
+}
@@ -1,19 +1,52 @@
 package gitlike.object;
 
+import gitlike.GitLikeException;
 import gitlike.Utils;
 
-import java.io.Serializable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Objects;
 
-public class Blob implements Serializable {
+public class Blob {
+    /**
+     * SHA-1 of the content, so the same content under different names has the same id.
+     * Blobs written by older versions have ids computed from the file name and the content.
+     */
     private final String id;
 
+    /**
+     * Name of the file the blob is used for, stored blobs have no file name,
+     * the name is given by the commit or the staging area that refers to the blob
+     */
     private final String fileName;
-    private final String content;
 
-    public Blob(String fileName, String content) {
+    /**
+     * Blob content is not kept in memory, it is read from the source when needed
+     */
+    private final Content content;
+
+    /**
+     * Create blob, the content is read once to compute the id
+     */
+    public Blob(String fileName, Content content) {
+        this.fileName = fileName;
+        this.content = content;
+        try (InputStream stream = content.open()) {
+            this.id = Utils.sha1(stream);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read content of " + fileName);
+        }
+    }
+
+    /**
+     * Restore a stored blob
+     */
+    public Blob(String id, String fileName, Content content) {
+        this.id = id;
         this.fileName = fileName;
         this.content = content;
-        this.id = Utils.sha1(this.fileName, this.content);
     }
 
     public String getId() {
@@ -24,13 +57,33 @@ public class Blob implements Serializable {
         return fileName;
     }
 
-    public String getContent() {
+    public Content getContent() {
         return content;
     }
 
+    /**
+     * Write the content to a file without loading it into memory, missing parent folders are created
+     */
+    public void writeTo(File file) {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.isDirectory()) {
+            /* unlike mkdirs, this succeeds when another thread creates the same folder at the same time */
+            try {
+                Files.createDirectories(folder.toPath());
+            } catch (IOException excp) {
+                throw new GitLikeException("Unable to create folder " + folder.getAbsolutePath());
+            }
+        }
+        try (InputStream stream = content.open()) {
+            Utils.writeContents(file, stream);
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read content of " + fileName);
+        }
+    }
+
     @Override
     public int hashCode() {
-        return id.hashCode();
+        return Objects.hash(id, fileName);
     }
 
     @Override
@@ -40,6 +93,6 @@ public class Blob implements Serializable {
         if (getClass() != obj.getClass())
             return false;
         Blob another = (Blob) obj;
-        return id.equals(another.id);
+        return id.equals(another.id) && Objects.equals(fileName, another.fileName);
     }
 }
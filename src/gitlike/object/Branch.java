@@ -3,6 +3,7 @@ package gitlike.object;
 import java.io.Serializable;
 
 public class Branch implements Serializable {
+    private static final long serialVersionUID = -3080594041935146024L;
 
     private final String name;
     private final String commitId;
@@ -0,0 +1,25 @@
+package gitlike.object;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Content held in memory
+ */
+public class ByteContent implements Content {
+    private final byte[] bytes;
+
+    public ByteContent(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public long size() {
+        return bytes.length;
+    }
+
+    @Override
+    public InputStream open() {
+        return new ByteArrayInputStream(bytes);
+    }
+}
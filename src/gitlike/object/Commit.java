@@ -2,26 +2,27 @@ package gitlike.object;
 
 import gitlike.Utils;
 
-import java.io.Serializable;
 import java.util.*;
 
-public class Commit implements Serializable {
-
+public class Commit {
     /**
      * SHA-1 commit identifier
      */
     private final String id;
 
     /**
-     * SHA-1 blob identifiers
+     * SHA-1 identifier of the tree of the root directory, null for commits written by older versions
      */
-    private final Set<String> blobIds;
+    private final String treeId;
 
     /**
-     * Commit also store blob names
-     * Because it's sometimes useful to check if a file exists in a commit without loading its content
+     * SHA-1 blob identifiers by file name.
+     * Blobs are identified by content only, so the same blob can be used for several files.
+     * Only commits written by older versions keep their files, for commits with a tree the files are read
+     * from the trees each time they are needed, so a cached commit does not grow after it is weighed.
      */
-    private final Set<String> blobFileNames;
+    private final SortedMap<String, String> blobIds;
+    private final TreeReader treeReader;
 
     private final String logMessage;
     private final String parentId;
@@ -31,41 +32,66 @@ public class Commit implements Serializable {
     /**
      * Create commit with current date
      */
-    public Commit(String logMessage, String parentId, String mergedParentId, Set<Blob> blobs) {
-        this(logMessage, parentId, mergedParentId, blobs, System.currentTimeMillis());
+    public Commit(String logMessage, String parentId, String mergedParentId, String treeId,
+                  TreeReader treeReader) {
+        this(logMessage, parentId, mergedParentId, treeId, treeReader, System.currentTimeMillis());
     }
 
     /**
      * Create commit with given date
+     * @param treeId id of the tree of the root directory
+     * @param treeReader reads the files of the tree when they are needed
      */
-    public Commit(String logMessage, String parentId, String mergedParentId, Set<Blob> blobs, long timestamp) {
+    public Commit(String logMessage, String parentId, String mergedParentId, String treeId,
+                  TreeReader treeReader, long timestamp) {
         this.timestamp = timestamp;
         this.parentId = parentId;
         this.mergedParentId = mergedParentId;
         this.logMessage = logMessage;
-
-        StringBuilder blobsSHABuilder = new StringBuilder();
-        this.blobIds = new HashSet<>();
-        this.blobFileNames = new HashSet<>();
-        if (blobs != null) {
-            for (Blob blob : blobs) {
-                blobIds.add(blob.getId());
-                blobFileNames.add(blob.getFileName());
-                blobsSHABuilder.append(blob.getId());
-            }
-        }
-        String blobsSHA = blobsSHABuilder.toString();
+        this.treeId = treeId;
+        this.treeReader = treeReader;
+        this.blobIds = null;
 
         String parentForSHA = parentId;
         if (parentForSHA == null)
             parentForSHA = "";
 
-        String mergedParentForSHA = parentId;
+        String mergedParentForSHA = mergedParentId;
         if (mergedParentForSHA == null)
             mergedParentForSHA = "";
 
         this.id = Utils.sha1(Long.toString(this.timestamp), parentForSHA, mergedParentForSHA, this.logMessage,
-                blobsSHA);
+                treeId);
+    }
+
+    /**
+     * Restore a stored commit
+     */
+    public Commit(String id, String logMessage, String parentId, String mergedParentId, String treeId,
+                  TreeReader treeReader, long timestamp) {
+        this.id = id;
+        this.logMessage = logMessage;
+        this.parentId = parentId;
+        this.mergedParentId = mergedParentId;
+        this.treeId = treeId;
+        this.treeReader = treeReader;
+        this.blobIds = null;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Restore a stored commit written by older versions, which stored its files without a tree
+     */
+    public Commit(String id, String logMessage, String parentId, String mergedParentId,
+                  SortedMap<String, String> blobIds, long timestamp) {
+        this.id = id;
+        this.logMessage = logMessage;
+        this.parentId = parentId;
+        this.mergedParentId = mergedParentId;
+        this.treeId = null;
+        this.treeReader = null;
+        this.blobIds = blobIds;
+        this.timestamp = timestamp;
     }
 
     public String getId() {
@@ -84,16 +110,42 @@ public class Commit implements Serializable {
         return logMessage;
     }
 
-    public Set<String> getBlobIds() {
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the id of the tree of the root directory, return null for commits written by older versions
+     */
+    public String getTreeId() {
+        return treeId;
+    }
+
+    /**
+     * Get blob ids by file name, ordered by file name
+     */
+    public SortedMap<String, String> getBlobIds() {
+        if (blobIds == null)
+            return Collections.unmodifiableSortedMap(treeReader.getFiles(treeId));
         return blobIds;
     }
 
-    public boolean containsBlob(String blobId) {
-        return blobIds.contains(blobId);
+    public Set<String> getFileNames() {
+        return getBlobIds().keySet();
+    }
+
+    /**
+     * Get the id of the blob with the content of a file, return null if the commit has no such file.
+     * For commits with a tree only the trees of the directories on the path are read.
+     */
+    public String getBlobId(String fileName) {
+        if (blobIds == null)
+            return treeReader.getBlobId(treeId, fileName);
+        return blobIds.get(fileName);
     }
 
     public boolean containsFile(String fileName) {
-        return blobFileNames.contains(fileName);
+        return getBlobId(fileName) != null;
     }
 
     public String toString() {
@@ -0,0 +1,447 @@
+package gitlike.object;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints in the style of Roaring bitmaps.
+ * <p>
+ * Values are split into blocks of 65536 by their high 16 bits. A block with at most 4096 values keeps
+ * their low 16 bits in a sorted array, a fuller block keeps a bitmap of 8 KiB, so a sparse block takes
+ * 2 bytes per value and a dense one takes 1 bit per possible value.
+ * Set operations work block by block and never expand the whole set.
+ */
+public class CompressedBitmap {
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int WORD_COUNT = BLOCK_SIZE / Long.SIZE;
+    private static final int MAX_ARRAY_SIZE = 4096;
+
+    /**
+     * High 16 bits of the values of each block, sorted
+     */
+    private char[] keys;
+    private Block[] blocks;
+    private int blockCount;
+
+    /**
+     * Create empty bitmap
+     */
+    public CompressedBitmap() {
+        this(4);
+    }
+
+    private CompressedBitmap(int capacity) {
+        keys = new char[capacity];
+        blocks = new Block[capacity];
+    }
+
+    /**
+     * Add a value to the set
+     */
+    public void add(int value) {
+        checkValue(value);
+        getOrCreateBlock((char) (value >>> BLOCK_BITS)).add((char) value);
+    }
+
+    /**
+     * Add all values from start inclusive to end exclusive
+     */
+    public void addRange(int start, int end) {
+        checkValue(start);
+        while (start < end) {
+            int blockEnd = Math.min(end, ((start >>> BLOCK_BITS) + 1) << BLOCK_BITS);
+            if (blockEnd <= 0)
+                blockEnd = end;
+            getOrCreateBlock((char) (start >>> BLOCK_BITS)).addRange(start & (BLOCK_SIZE - 1),
+                    blockEnd - (start & ~(BLOCK_SIZE - 1)));
+            start = blockEnd;
+        }
+    }
+
+    public boolean contains(int value) {
+        if (value < 0)
+            return false;
+        int index = indexOf((char) (value >>> BLOCK_BITS));
+        return index >= 0 && blocks[index].contains((char) value);
+    }
+
+    /**
+     * Get the number of values in the set
+     */
+    public long getCardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < blockCount; i++) {
+            cardinality += blocks[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return blockCount == 0;
+    }
+
+    /**
+     * Call the consumer for every value in increasing order
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < blockCount; i++) {
+            blocks[i].forEach(keys[i] << BLOCK_BITS, consumer);
+        }
+    }
+
+    /**
+     * Get values that are in both sets
+     */
+    public CompressedBitmap and(CompressedBitmap another) {
+        CompressedBitmap result = new CompressedBitmap(Math.min(blockCount, another.blockCount) + 1);
+        int i = 0;
+        int j = 0;
+        while (i < blockCount && j < another.blockCount) {
+            if (keys[i] < another.keys[j]) {
+                i++;
+            } else if (keys[i] > another.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], Block.and(blocks[i], another.blocks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get values that are in any of the sets
+     */
+    public CompressedBitmap or(CompressedBitmap another) {
+        CompressedBitmap result = new CompressedBitmap(blockCount + another.blockCount + 1);
+        int i = 0;
+        int j = 0;
+        while (i < blockCount || j < another.blockCount) {
+            if (j == another.blockCount || i < blockCount && keys[i] < another.keys[j]) {
+                result.append(keys[i], blocks[i].copy());
+                i++;
+            } else if (i == blockCount || keys[i] > another.keys[j]) {
+                result.append(another.keys[j], another.blocks[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], Block.or(blocks[i], another.blocks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get values of this set that are not in the other one
+     */
+    public CompressedBitmap andNot(CompressedBitmap another) {
+        CompressedBitmap result = new CompressedBitmap(blockCount + 1);
+        int j = 0;
+        for (int i = 0; i < blockCount; i++) {
+            while (j < another.blockCount && another.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < another.blockCount && another.keys[j] == keys[i])
+                result.append(keys[i], Block.andNot(blocks[i], another.blocks[j]));
+            else
+                result.append(keys[i], blocks[i].copy());
+        }
+        return result;
+    }
+
+    public CompressedBitmap copy() {
+        CompressedBitmap result = new CompressedBitmap(blockCount + 1);
+        for (int i = 0; i < blockCount; i++) {
+            result.append(keys[i], blocks[i].copy());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        CompressedBitmap another = (CompressedBitmap) obj;
+        if (blockCount != another.blockCount)
+            return false;
+        for (int i = 0; i < blockCount; i++) {
+            if (keys[i] != another.keys[i] || !blocks[i].equals(another.blocks[i]))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < blockCount; i++) {
+            result = 31 * result + keys[i];
+            result = 31 * result + blocks[i].hashCode();
+        }
+        return result;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, blockCount, key);
+    }
+
+    private Block getOrCreateBlock(char key) {
+        int index = indexOf(key);
+        if (index >= 0)
+            return blocks[index];
+
+        index = -index - 1;
+        ensureCapacity();
+        System.arraycopy(keys, index, keys, index + 1, blockCount - index);
+        System.arraycopy(blocks, index, blocks, index + 1, blockCount - index);
+        keys[index] = key;
+        blocks[index] = new Block();
+        blockCount++;
+        return blocks[index];
+    }
+
+    /**
+     * Add a block with a key larger than all keys, empty blocks are dropped
+     */
+    private void append(char key, Block block) {
+        if (block.cardinality == 0)
+            return;
+        ensureCapacity();
+        keys[blockCount] = key;
+        blocks[blockCount] = block;
+        blockCount++;
+    }
+
+    private void ensureCapacity() {
+        if (blockCount < keys.length)
+            return;
+        int capacity = Math.max(4, keys.length * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        blocks = Arrays.copyOf(blocks, capacity);
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value " + value);
+    }
+
+    /**
+     * Values of one block, either a sorted array or a bitmap
+     */
+    private static class Block {
+        private char[] values = new char[4];
+        private long[] words;
+        private int cardinality;
+
+        private boolean contains(char value) {
+            if (words != null)
+                return (words[value >>> 6] & (1L << value)) != 0;
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        private void add(char value) {
+            if (words != null) {
+                long bit = 1L << value;
+                if ((words[value >>> 6] & bit) == 0) {
+                    words[value >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0)
+                return;
+            if (cardinality == MAX_ARRAY_SIZE) {
+                toWords();
+                add(value);
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, values.length * 2));
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+        }
+
+        /**
+         * Add low bits from start inclusive to end exclusive, end is at most the block size
+         */
+        private void addRange(int start, int end) {
+            if (words == null && cardinality + end - start <= MAX_ARRAY_SIZE) {
+                for (int value = start; value < end; value++) {
+                    add((char) value);
+                }
+                return;
+            }
+
+            toWords();
+            for (int value = start; value < end; ) {
+                int word = value >>> 6;
+                int wordEnd = Math.min(end, (word + 1) << 6);
+                long mask = (-1L >>> (Long.SIZE - (wordEnd - value))) << value;
+                cardinality += Long.bitCount(mask & ~words[word]);
+                words[word] |= mask;
+                value = wordEnd;
+            }
+        }
+
+        private void forEach(int high, IntConsumer consumer) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    consumer.accept(high | values[i]);
+                }
+                return;
+            }
+            for (int word = 0; word < WORD_COUNT; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    consumer.accept(high | word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        private Block copy() {
+            Block result = new Block();
+            result.cardinality = cardinality;
+            if (words != null)
+                result.words = words.clone();
+            else
+                result.values = Arrays.copyOf(values, Math.max(4, cardinality));
+            return result;
+        }
+
+        private static Block and(Block first, Block second) {
+            if (first.words == null || second.words == null) {
+                Block array = first.words == null ? first : second;
+                Block other = array == first ? second : first;
+                Block result = new Block();
+                result.values = new char[Math.max(4, array.cardinality)];
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (other.contains(array.values[i]))
+                        result.values[result.cardinality++] = array.values[i];
+                }
+                return result;
+            }
+
+            Block result = new Block();
+            result.words = new long[WORD_COUNT];
+            for (int i = 0; i < WORD_COUNT; i++) {
+                result.words[i] = first.words[i] & second.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            result.shrink();
+            return result;
+        }
+
+        private static Block or(Block first, Block second) {
+            Block result = first.copy();
+            if (second.words == null) {
+                for (int i = 0; i < second.cardinality; i++) {
+                    result.add(second.values[i]);
+                }
+                return result;
+            }
+
+            result.toWords();
+            result.cardinality = 0;
+            for (int i = 0; i < WORD_COUNT; i++) {
+                result.words[i] |= second.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result;
+        }
+
+        private static Block andNot(Block first, Block second) {
+            Block result = new Block();
+            if (first.words == null) {
+                result.values = new char[Math.max(4, first.cardinality)];
+                for (int i = 0; i < first.cardinality; i++) {
+                    if (!second.contains(first.values[i]))
+                        result.values[result.cardinality++] = first.values[i];
+                }
+                return result;
+            }
+
+            result.words = first.words.clone();
+            result.cardinality = first.cardinality;
+            if (second.words == null) {
+                for (int i = 0; i < second.cardinality; i++) {
+                    char value = second.values[i];
+                    if ((result.words[value >>> 6] & (1L << value)) != 0) {
+                        result.words[value >>> 6] &= ~(1L << value);
+                        result.cardinality--;
+                    }
+                }
+            } else {
+                result.cardinality = 0;
+                for (int i = 0; i < WORD_COUNT; i++) {
+                    result.words[i] &= ~second.words[i];
+                    result.cardinality += Long.bitCount(result.words[i]);
+                }
+            }
+            result.shrink();
+            return result;
+        }
+
+        private void toWords() {
+            if (words != null)
+                return;
+            words = new long[WORD_COUNT];
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+
+        /**
+         * Switch back to an array when there are few values left
+         */
+        private void shrink() {
+            if (words == null || cardinality > MAX_ARRAY_SIZE)
+                return;
+            values = new char[Math.max(4, cardinality)];
+            int count = 0;
+            for (int word = 0; word < WORD_COUNT; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[count++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            words = null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Block))
+                return false;
+            Block another = (Block) obj;
+            if (cardinality != another.cardinality)
+                return false;
+            if (words != null && another.words != null)
+                return Arrays.equals(words, another.words);
+            Block array = words == null ? this : another;
+            Block other = array == this ? another : this;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(array.values[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int[] result = {cardinality};
+            forEach(0, value -> result[0] = 31 * result[0] + value);
+            return result[0];
+        }
+    }
+}
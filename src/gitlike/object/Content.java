@@ -0,0 +1,28 @@
+package gitlike.object;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Source of file content that can be read several times without loading it into memory
+ */
+public interface Content {
+
+    /**
+     * Get the length of the content in bytes
+     */
+    long size();
+
+    /**
+     * Open a new stream positioned at the beginning of the content
+     */
+    InputStream open() throws IOException;
+
+    /**
+     * Get the part of the content with the given length that starts at the given offset
+     */
+    default Content slice(long offset, long length) {
+        return new SlicedContent(this, offset, length);
+    }
+
+}
@@ -0,0 +1,27 @@
+package gitlike.object;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content stored in a file
+ */
+public class FileContent implements Content {
+    private final File file;
+
+    public FileContent(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public long size() {
+        return file.length();
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        return new FileInputStream(file);
+    }
+}
@@ -0,0 +1,117 @@
+package gitlike.object;
+
+import gitlike.GitLikeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stat data of a working file: mode, size, modification time and inode.
+ * When the stat data of a file did not change, its content is assumed to be the same.
+ * On file systems without unix attributes the mode has only the file type bits and the inode is 0.
+ */
+public class FileStat {
+    private static final boolean HAS_UNIX_ATTRIBUTES =
+            FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    private static final String UNIX_ATTRIBUTES = "unix:mode,ino,size,lastModifiedTime";
+
+    /**
+     * File type bits of the mode
+     */
+    private static final int TYPE_MASK = 0170000;
+    private static final int DIRECTORY = 0040000;
+    private static final int REGULAR_FILE = 0100000;
+    private static final int SYMBOLIC_LINK = 0120000;
+
+    private final int mode;
+    private final long size;
+
+    /**
+     * Modification time in nanoseconds since the epoch
+     */
+    private final long modifiedTime;
+    private final long inode;
+
+    public FileStat(int mode, long size, long modifiedTime, long inode) {
+        this.mode = mode;
+        this.size = size;
+        this.modifiedTime = modifiedTime;
+        this.inode = inode;
+    }
+
+    /**
+     * Read the stat data of a file, symbolic links are not followed
+     * @return stat data, null if the file does not exist
+     */
+    public static FileStat read(File file) {
+        try {
+            if (HAS_UNIX_ATTRIBUTES) {
+                Map<String, Object> attributes = Files.readAttributes(file.toPath(), UNIX_ATTRIBUTES,
+                        LinkOption.NOFOLLOW_LINKS);
+                return new FileStat((Integer) attributes.get("mode"), (Long) attributes.get("size"),
+                        toNanos((FileTime) attributes.get("lastModifiedTime")), (Long) attributes.get("ino"));
+            }
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            int type = attributes.isDirectory() ? DIRECTORY : attributes.isRegularFile() ? REGULAR_FILE
+                    : attributes.isSymbolicLink() ? SYMBOLIC_LINK : 0;
+            return new FileStat(type, attributes.size(), toNanos(attributes.lastModifiedTime()), 0);
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new GitLikeException("Unable to read attributes of " + file.getPath());
+        }
+    }
+
+    public boolean isDirectory() {
+        return (mode & TYPE_MASK) == DIRECTORY;
+    }
+
+    public boolean isRegularFile() {
+        return (mode & TYPE_MASK) == REGULAR_FILE;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    public long getInode() {
+        return inode;
+    }
+
+    private static long toNanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(size) * 31 + Long.hashCode(modifiedTime);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        FileStat another = (FileStat) obj;
+        return mode == another.mode && size == another.size && modifiedTime == another.modifiedTime
+                && inode == another.inode;
+    }
+}
@@ -0,0 +1,64 @@
+package gitlike.object;
+
+/**
+ * Entry of the index for one file path: the blob id of the file, whether it is staged,
+ * and the stat data of the working file the blob id was computed from.
+ */
+public class IndexEntry {
+
+    public enum State {
+        /**
+         * Not staged, only the blob id of the working file is cached
+         */
+        CACHED,
+
+        /**
+         * Staged for addition
+         */
+        ADDED,
+
+        /**
+         * Staged for removal, there is no blob id and no stat data
+         */
+        REMOVED
+    }
+
+    private final String path;
+    private final String blobId;
+    private final State state;
+
+    /**
+     * Stat data of the working file when the blob id was computed, null if it is unknown
+     */
+    private final FileStat stat;
+
+    public IndexEntry(String path, String blobId, State state, FileStat stat) {
+        this.path = path;
+        this.blobId = blobId;
+        this.state = state;
+        this.stat = stat;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getBlobId() {
+        return blobId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public FileStat getStat() {
+        return stat;
+    }
+
+    /**
+     * Get the same entry with another state
+     */
+    public IndexEntry withState(State newState) {
+        return new IndexEntry(path, blobId, newState, stat);
+    }
+}
@@ -0,0 +1,28 @@
+package gitlike.object;
+
+/**
+ * Set of commits reachable from a commit, as positions in the commit graph
+ */
+public class Reachability {
+    private final String commitId;
+    private final CompressedBitmap commits;
+
+    public Reachability(String commitId, CompressedBitmap commits) {
+        this.commitId = commitId;
+        this.commits = commits;
+    }
+
+    /**
+     * Get the id of the commit the set was computed for
+     */
+    public String getCommitId() {
+        return commitId;
+    }
+
+    /**
+     * Get graph positions of the commit and all its ancestors
+     */
+    public CompressedBitmap getCommits() {
+        return commits;
+    }
+}
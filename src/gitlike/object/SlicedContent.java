@@ -0,0 +1,84 @@
+package gitlike.object;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Part of another content, the preceding bytes are skipped when the content is opened
+ */
+class SlicedContent implements Content {
+    private final Content content;
+    private final long offset;
+    private final long length;
+
+    SlicedContent(Content content, long offset, long length) {
+        this.content = content;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public long size() {
+        return length;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        InputStream in = content.open();
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    in.close();
+                    throw new EOFException("Content is shorter than expected");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+
+        return new FilterInputStream(in) {
+            private long left = length;
+
+            @Override
+            public int read() throws IOException {
+                if (left <= 0)
+                    return -1;
+                int result = super.read();
+                if (result >= 0)
+                    left--;
+                return result;
+            }
+
+            @Override
+            public int read(byte[] bytes, int off, int len) throws IOException {
+                if (left <= 0)
+                    return -1;
+                int result = super.read(bytes, off, (int) Math.min(len, left));
+                if (result > 0)
+                    left -= result;
+                return result;
+            }
+
+            @Override
+            public long skip(long count) throws IOException {
+                long result = super.skip(Math.min(count, left));
+                left -= result;
+                return result;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(super.available(), left);
+            }
+        };
+    }
+
+    @Override
+    public Content slice(long offset, long length) {
+        return new SlicedContent(content, this.offset + offset, length);
+    }
+}
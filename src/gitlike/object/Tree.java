@@ -0,0 +1,89 @@
+package gitlike.object;
+
+import gitlike.Utils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Content of one directory: blob ids of its files and tree ids of its subdirectories by name.
+ * <p>
+ * The id is computed from the names and ids of the entries, so a directory whose content did not change
+ * keeps its id and is shared between commits, and equal ids mean equal content of the whole subtree.
+ */
+public class Tree {
+    private final String id;
+    private final SortedMap<String, String> blobIds;
+    private final SortedMap<String, String> treeIds;
+
+    /**
+     * Create tree and compute its id
+     */
+    public Tree(SortedMap<String, String> blobIds, SortedMap<String, String> treeIds) {
+        this.blobIds = blobIds;
+        this.treeIds = treeIds;
+
+        StringBuilder entries = new StringBuilder();
+        for (Map.Entry<String, String> entry: blobIds.entrySet()) {
+            entries.append('f').append(entry.getKey()).append('\0').append(entry.getValue());
+        }
+        for (Map.Entry<String, String> entry: treeIds.entrySet()) {
+            entries.append('d').append(entry.getKey()).append('\0').append(entry.getValue());
+        }
+        id = Utils.sha1("tree", entries.toString());
+    }
+
+    /**
+     * Create empty tree
+     */
+    public Tree() {
+        this(Collections.emptySortedMap(), Collections.emptySortedMap());
+    }
+
+    /**
+     * Restore a stored tree
+     */
+    public Tree(String id, SortedMap<String, String> blobIds, SortedMap<String, String> treeIds) {
+        this.id = id;
+        this.blobIds = blobIds;
+        this.treeIds = treeIds;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get blob ids of the files in the directory by file name
+     */
+    public SortedMap<String, String> getBlobIds() {
+        return blobIds;
+    }
+
+    /**
+     * Get tree ids of the subdirectories by directory name
+     */
+    public SortedMap<String, String> getTreeIds() {
+        return treeIds;
+    }
+
+    public boolean isEmpty() {
+        return blobIds.isEmpty() && treeIds.isEmpty();
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        Tree another = (Tree) obj;
+        return id.equals(another.id);
+    }
+}
@@ -0,0 +1,20 @@
+package gitlike.object;
+
+import java.util.SortedMap;
+
+/**
+ * Reads the files of stored directory trees, so a commit with a tree can give one file
+ * without reading the trees of all directories.
+ */
+public interface TreeReader {
+
+    /**
+     * Get blob ids of all files under a tree by file path
+     */
+    SortedMap<String, String> getFiles(String treeId);
+
+    /**
+     * Get the blob id of one file under a tree, return null if there is no such file
+     */
+    String getBlobId(String treeId, String path);
+}